@@ -0,0 +1,17 @@
+package dev.mcodex.RNSensitiveInfo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link StorageBackend} that keeps values in the binary {@link ValueFormat} and can hand them
+ * out without building an intermediate String.
+ */
+interface BinaryStorageBackend extends StorageBackend {
+
+    /**
+     * Returns a read-only view of the stored value in {@link ValueFormat}, or null when the key is
+     * missing. The view stays valid after later writes.
+     */
+    ByteBuffer getBuffer(String key) throws IOException;
+}
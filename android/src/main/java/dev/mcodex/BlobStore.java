@@ -0,0 +1,253 @@
+package dev.mcodex.RNSensitiveInfo;
+
+import android.util.Base64;
+import android.util.Log;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Stores large values in side files and keeps only a pointer in the storage backend. A file is
+ * encrypted as a sequence of AES-GCM chunks, each authenticated on its own, so the cipher works
+ * on one chunk at a time; the value itself is still held in memory as a whole.
+ *
+ * Pointers are {@code b1:<namespace>/<file>} for files under the envelope data key, and
+ * {@code b2:<namespace>/<file>#<wrappedKey>} for files under their own key, which the caller
+ * wraps (e.g. with the keystore key) and which is kept Base64-encoded in the pointer.
+ *
+ * File layout: a header ({@code [magic][version][chunkSize][noncePrefix]}) followed by the
+ * encrypted chunks. The nonce of a chunk is {@code noncePrefix || index || lastFlag} and the
+ * header is passed as associated data, so reordered, truncated or extended files fail to decrypt.
+ */
+class BlobStore {
+
+    static final String POINTER_PREFIX = "b1:";
+    static final String WRAPPED_POINTER_PREFIX = "b2:";
+    private static final String KEY_SEPARATOR = "#";
+
+    private static final String AES_GCM = "AES/GCM/NoPadding";
+    private static final String CIPHER_SLOT = "blob";
+    private static final String FILE_SUFFIX = ".blob";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final int MAGIC = 0x524e5342;
+    private static final byte VERSION = 1;
+    private static final int NONCE_PREFIX_SIZE = 7;
+    private static final int HEADER_SIZE = 16;
+    private static final int TAG_SIZE_BYTES = 16;
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int KEY_SIZE = 32;
+    private static final int MAX_CHUNK_SIZE = 16 * 1024 * 1024;
+
+    private final File mRoot;
+    private final SecureRandom mRandom = new SecureRandom();
+    private final Set<String> mNamespacesWithBlobs = new HashSet<>();
+    private final Set<String> mCheckedNamespaces = new HashSet<>();
+
+    BlobStore(File root) {
+        mRoot = root;
+    }
+
+    static boolean isPointer(String value) {
+        return value.startsWith(POINTER_PREFIX) || value.startsWith(WRAPPED_POINTER_PREFIX);
+    }
+
+    /**
+     * Returns the wrapped key stored in {@code pointer}, or null when the file is encrypted under
+     * the envelope data key.
+     */
+    static byte[] wrappedKey(String pointer) {
+        if (!pointer.startsWith(WRAPPED_POINTER_PREFIX)) {
+            return null;
+        }
+        return Base64.decode(pointer.substring(pointer.indexOf(KEY_SEPARATOR) + 1), Base64.NO_WRAP);
+    }
+
+    /**
+     * Generates a fresh key for a file that does not use the envelope data key.
+     */
+    SecretKey newKey() {
+        byte[] key = new byte[KEY_SIZE];
+        mRandom.nextBytes(key);
+        return new SecretKeySpec(key, "AES");
+    }
+
+    /**
+     * Returns whether {@code namespace} may hold blobs, so writers only look up the previous value
+     * of a key when it could be a pointer.
+     */
+    synchronized boolean hasBlobs(String namespace) {
+        if (mCheckedNamespaces.add(namespace)) {
+            File[] files = directory(namespace).listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    if (file.getName().endsWith(TEMP_SUFFIX)) {
+                        // Left behind by an interrupted write; no pointer refers to it.
+                        file.delete();
+                    } else {
+                        mNamespacesWithBlobs.add(namespace);
+                    }
+                }
+            }
+        }
+        return mNamespacesWithBlobs.contains(namespace);
+    }
+
+    /**
+     * Encrypts {@code plaintext} into a new side file and returns the pointer to store for it.
+     * {@code wrappedKey} is {@code key} as wrapped by the caller, or null when {@code key} is the
+     * envelope data key.
+     */
+    String write(String namespace, byte[] plaintext, SecretKey key, byte[] wrappedKey) throws IOException, GeneralSecurityException {
+        File directory = directory(namespace);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        synchronized (this) {
+            mCheckedNamespaces.add(namespace);
+            mNamespacesWithBlobs.add(namespace);
+        }
+
+        byte[] noncePrefix = new byte[NONCE_PREFIX_SIZE];
+        mRandom.nextBytes(noncePrefix);
+        byte[] header = ByteBuffer.allocate(HEADER_SIZE)
+                .putInt(MAGIC).put(VERSION).putInt(CHUNK_SIZE).put(noncePrefix).array();
+
+        String fileName = UUID.randomUUID().toString() + FILE_SUFFIX;
+        File temp = new File(directory, fileName + TEMP_SUFFIX);
+        FileOutputStream out = new FileOutputStream(temp);
+        try {
+            out.write(header);
+            Cipher c = CipherPool.obtain(AES_GCM, CIPHER_SLOT);
+            byte[] chunk = new byte[CHUNK_SIZE + TAG_SIZE_BYTES];
+            int index = 0;
+            int offset = 0;
+            do {
+                int length = Math.min(CHUNK_SIZE, plaintext.length - offset);
+                boolean last = offset + length == plaintext.length;
+                c.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_SIZE_BYTES * 8, nonce(noncePrefix, index, last)));
+                c.updateAAD(header);
+                out.write(chunk, 0, c.doFinal(plaintext, offset, length, chunk, 0));
+                offset += length;
+                index++;
+            } while (offset < plaintext.length);
+            out.getFD().sync();
+        } catch (IOException | GeneralSecurityException e) {
+            out.close();
+            temp.delete();
+            throw e;
+        }
+        out.close();
+
+        if (!temp.renameTo(new File(directory, fileName))) {
+            temp.delete();
+            throw new IOException("Could not install blob " + fileName);
+        }
+        String path = directory.getName() + "/" + fileName;
+        if (wrappedKey == null) {
+            return POINTER_PREFIX + path;
+        }
+        return WRAPPED_POINTER_PREFIX + path + KEY_SEPARATOR + Base64.encodeToString(wrappedKey, Base64.NO_WRAP);
+    }
+
+    byte[] read(String pointer, SecretKey key) throws IOException, GeneralSecurityException {
+        File file = file(pointer);
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            byte[] header = new byte[HEADER_SIZE];
+            in.readFully(header);
+            ByteBuffer fields = ByteBuffer.wrap(header);
+            int chunkSize = fields.getInt(5);
+            if (fields.getInt(0) != MAGIC || header[4] != VERSION || chunkSize <= 0 || chunkSize > MAX_CHUNK_SIZE) {
+                throw new IOException("Unsupported blob " + file);
+            }
+            byte[] noncePrefix = new byte[NONCE_PREFIX_SIZE];
+            System.arraycopy(header, 9, noncePrefix, 0, NONCE_PREFIX_SIZE);
+
+            // Every chunk but the last is full, so the file length gives the chunk layout.
+            long encryptedLength = file.length() - HEADER_SIZE;
+            long fullChunk = chunkSize + TAG_SIZE_BYTES;
+            long chunkCount = Math.max(1, (encryptedLength + fullChunk - 1) / fullChunk);
+            long plaintextLength = encryptedLength - chunkCount * TAG_SIZE_BYTES;
+            if (plaintextLength < 0 || plaintextLength > Integer.MAX_VALUE) {
+                throw new IOException("Corrupt blob " + file);
+            }
+
+            byte[] plaintext = new byte[(int) plaintextLength];
+            byte[] chunk = new byte[(int) fullChunk];
+            Cipher c = CipherPool.obtain(AES_GCM, CIPHER_SLOT);
+            int offset = 0;
+            for (int index = 0; index < chunkCount; index++) {
+                boolean last = index == chunkCount - 1;
+                int length = last ? (int) (encryptedLength - index * fullChunk) : (int) fullChunk;
+                in.readFully(chunk, 0, length);
+                c.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_SIZE_BYTES * 8, nonce(noncePrefix, index, last)));
+                c.updateAAD(header);
+                offset += c.doFinal(chunk, 0, length, plaintext, offset);
+            }
+            return plaintext;
+        } finally {
+            in.close();
+        }
+    }
+
+    void delete(String pointer) {
+        File file = file(pointer);
+        if (file.exists() && !file.delete()) {
+            Log.d("RNSensitiveInfo", "Could not delete blob " + file);
+        }
+    }
+
+    /**
+     * Deletes every side file of {@code namespace}.
+     */
+    void deleteNamespace(String namespace) {
+        File[] files = directory(namespace).listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!file.delete()) {
+                    Log.d("RNSensitiveInfo", "Could not delete blob " + file);
+                }
+            }
+        }
+        synchronized (this) {
+            mNamespacesWithBlobs.remove(namespace);
+        }
+    }
+
+    private File directory(String namespace) {
+        return new File(mRoot, FileNames.encode(namespace));
+    }
+
+    private File file(String pointer) {
+        String path = pointer.substring(POINTER_PREFIX.length());
+        if (pointer.startsWith(WRAPPED_POINTER_PREFIX)) {
+            path = path.substring(0, path.indexOf(KEY_SEPARATOR));
+        }
+        // Encoded names never start with a dot, so a pointer cannot leave its namespace directory.
+        String[] segments = path.split("/", -1);
+        if (segments.length != 2 || segments[0].startsWith(".") || segments[1].startsWith(".")) {
+            throw new IllegalArgumentException("Invalid blob pointer");
+        }
+        return new File(mRoot, path);
+    }
+
+    private static byte[] nonce(byte[] noncePrefix, int index, boolean last) {
+        return ByteBuffer.allocate(NONCE_PREFIX_SIZE + 5)
+                .put(noncePrefix).putInt(index).put((byte) (last ? 1 : 0)).array();
+    }
+}
@@ -0,0 +1,78 @@
+package dev.mcodex.RNSensitiveInfo;
+
+import java.security.GeneralSecurityException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.crypto.Cipher;
+
+/**
+ * Reuses {@link Cipher} instances so that {@code Cipher.getInstance} does not walk the provider
+ * list and allocate a new engine for every encrypt/decrypt. Callers always re-init the returned
+ * cipher with their key and parameter spec before using it.
+ */
+final class CipherPool {
+
+    private static final int MAX_SHARED_PER_TRANSFORMATION = 4;
+
+    private static final ThreadLocal<Map<String, Cipher>> sThreadCiphers = new ThreadLocal<Map<String, Cipher>>() {
+        @Override
+        protected Map<String, Cipher> initialValue() {
+            return new HashMap<>();
+        }
+    };
+
+    private static final ConcurrentHashMap<String, Queue<Cipher>> sSharedCiphers = new ConcurrentHashMap<>();
+
+    private CipherPool() {
+    }
+
+    /**
+     * Returns a cipher owned by the calling thread. It must not escape the thread, since the next
+     * call for the same transformation on this thread hands out the same instance.
+     */
+    static Cipher obtain(String transformation) throws GeneralSecurityException {
+        return obtain(transformation, "keystore");
+    }
+
+    /**
+     * Same as {@link #obtain(String)}, but keeps a separate instance per {@code slot}. A cipher
+     * binds to the provider of the first key it was initialised with, so keystore keys and
+     * in-memory keys must not share an instance.
+     */
+    static Cipher obtain(String transformation, String slot) throws GeneralSecurityException {
+        Map<String, Cipher> ciphers = sThreadCiphers.get();
+        String poolKey = slot + "/" + transformation;
+        Cipher cipher = ciphers.get(poolKey);
+        if (cipher == null) {
+            cipher = Cipher.getInstance(transformation);
+            ciphers.put(poolKey, cipher);
+        }
+        return cipher;
+    }
+
+    /**
+     * Checks a cipher out of the shared pool. Used for ciphers that are handed over to a biometric
+     * authentication session and finished on another thread; give them back with
+     * {@link #release(String, Cipher)} once {@code doFinal} has completed.
+     */
+    static Cipher acquire(String transformation) throws GeneralSecurityException {
+        Queue<Cipher> ciphers = sSharedCiphers.get(transformation);
+        Cipher cipher = ciphers != null ? ciphers.poll() : null;
+        return cipher != null ? cipher : Cipher.getInstance(transformation);
+    }
+
+    static void release(String transformation, Cipher cipher) {
+        Queue<Cipher> ciphers = sSharedCiphers.get(transformation);
+        if (ciphers == null) {
+            sSharedCiphers.putIfAbsent(transformation, new ConcurrentLinkedQueue<Cipher>());
+            ciphers = sSharedCiphers.get(transformation);
+        }
+        if (ciphers.size() < MAX_SHARED_PER_TRANSFORMATION) {
+            ciphers.offer(cipher);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package dev.mcodex.RNSensitiveInfo;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Optional Deflate compression of plaintext before it is encrypted. A compressed plaintext starts
+ * with {@code [marker][flags]}; the marker byte never occurs in UTF-8, so uncompressed values,
+ * including everything stored by older versions, are recognised without any other header.
+ */
+final class Compression {
+
+    private static final byte MARKER = (byte) 0xFF;
+    private static final byte FLAG_DEFLATE = 1;
+    private static final int HEADER_SIZE = 2;
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private Compression() {
+    }
+
+    /**
+     * Deflates {@code plaintext} when it is at least {@code threshold} bytes long and compressing
+     * actually makes it smaller. A threshold of 0 disables compression.
+     */
+    static byte[] compress(byte[] plaintext, int threshold) {
+        if (threshold <= 0 || plaintext.length < threshold) {
+            return plaintext;
+        }
+
+        Deflater deflater = new Deflater();
+        try {
+            deflater.setInput(plaintext);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(plaintext.length / 2);
+            out.write(MARKER);
+            out.write(FLAG_DEFLATE);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+                if (out.size() >= plaintext.length) {
+                    return plaintext;
+                }
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    static byte[] decompress(byte[] plaintext) throws DataFormatException {
+        if (plaintext.length < HEADER_SIZE || plaintext[0] != MARKER) {
+            return plaintext;
+        }
+        if (plaintext[1] != FLAG_DEFLATE) {
+            throw new DataFormatException("Unsupported compression flags " + plaintext[1]);
+        }
+
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(plaintext, HEADER_SIZE, plaintext.length - HEADER_SIZE);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(plaintext.length * 2);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (!inflater.finished()) {
+                int inflated = inflater.inflate(buffer);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new DataFormatException("Truncated compressed value");
+                }
+                out.write(buffer, 0, inflated);
+            }
+            return out.toByteArray();
+        } finally {
+            inflater.end();
+        }
+    }
+}
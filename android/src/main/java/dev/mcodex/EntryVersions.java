@@ -0,0 +1,64 @@
+package dev.mcodex.RNSensitiveInfo;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Version numbers of the stored entries, for compare-and-set writes. Every write of a key gives it
+ * a new version from one counter; entries not written since the start of the process share the
+ * version of their namespace. Versions live in memory only and the counter starts from the
+ * wall clock, so a version from an earlier run of the app does not match a current entry.
+ * A missing entry has version 0.
+ */
+class EntryVersions {
+
+    static final long ABSENT = 0;
+
+    private final Map<String, Map<String, Long>> mVersions = new HashMap<>();
+    private final Map<String, Long> mBaseVersions = new HashMap<>();
+    private final long mStartVersion;
+    private long mCounter;
+
+    EntryVersions() {
+        mStartVersion = System.currentTimeMillis();
+        mCounter = mStartVersion;
+    }
+
+    /**
+     * Returns the version of an entry that exists.
+     */
+    synchronized long get(String namespace, String key) {
+        Map<String, Long> versions = mVersions.get(namespace);
+        Long version = versions != null ? versions.get(key) : null;
+        if (version != null) {
+            return version;
+        }
+        Long base = mBaseVersions.get(namespace);
+        return base != null ? base : mStartVersion;
+    }
+
+    /**
+     * Gives the written {@code keys} one new version and returns it.
+     */
+    synchronized long bump(String namespace, Collection<String> keys) {
+        long version = ++mCounter;
+        Map<String, Long> versions = mVersions.get(namespace);
+        if (versions == null) {
+            versions = new HashMap<>();
+            mVersions.put(namespace, versions);
+        }
+        for (String key : keys) {
+            versions.put(key, version);
+        }
+        return version;
+    }
+
+    /**
+     * Gives every entry of {@code namespace} a new version, after it was cleared or replaced.
+     */
+    synchronized void bumpAll(String namespace) {
+        mVersions.remove(namespace);
+        mBaseVersions.put(namespace, ++mCounter);
+    }
+}
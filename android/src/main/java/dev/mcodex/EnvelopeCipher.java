@@ -0,0 +1,141 @@
+package dev.mcodex.RNSensitiveInfo;
+
+import android.content.SharedPreferences;
+import android.util.Base64;
+
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Envelope encryption: a random data-encryption key is wrapped once by the keystore key and
+ * persisted, unwrapped once per process, and then used for in-process AES-GCM. Only the wrap
+ * and unwrap of the data key go through the Android Keystore.
+ */
+class EnvelopeCipher {
+
+    interface KeyWrapper {
+        byte[] wrap(byte[] key) throws Exception;
+
+        byte[] unwrap(byte[] wrappedKey) throws Exception;
+
+        /**
+         * Unwraps a key persisted by earlier versions, which wrapped it like a stored value.
+         */
+        byte[] unwrapLegacy(byte[] wrappedKey) throws Exception;
+    }
+
+    static final String PREFIX = "e1:";
+
+    private static final String AES_GCM = "AES/GCM/NoPadding";
+    private static final String CIPHER_SLOT = "envelope";
+    private static final String LEGACY_WRAPPED_KEY = "wrappedDataKey";
+    private static final String WRAPPED_KEY = "wrappedDataKeyV2";
+    private static final int KEY_SIZE_BYTES = 32;
+    private static final int IV_SIZE_BYTES = 12;
+    private static final int TAG_SIZE_BITS = 128;
+
+    private final SharedPreferences mKeyPrefs;
+    private final KeyWrapper mWrapper;
+    private final SecureRandom mRandom = new SecureRandom();
+    private volatile SecretKey mDataKey;
+
+    EnvelopeCipher(SharedPreferences keyPrefs, KeyWrapper wrapper) {
+        mKeyPrefs = keyPrefs;
+        mWrapper = wrapper;
+    }
+
+    static boolean isEnvelope(String encrypted) {
+        return encrypted.startsWith(PREFIX);
+    }
+
+    String encrypt(byte[] plaintext) throws Exception {
+        byte[] iv = new byte[IV_SIZE_BYTES];
+        mRandom.nextBytes(iv);
+
+        Cipher c = CipherPool.obtain(AES_GCM, CIPHER_SLOT);
+        c.init(Cipher.ENCRYPT_MODE, dataKey(), new GCMParameterSpec(TAG_SIZE_BITS, iv));
+        byte[] payload = new byte[IV_SIZE_BYTES + c.getOutputSize(plaintext.length)];
+        System.arraycopy(iv, 0, payload, 0, IV_SIZE_BYTES);
+        int written = c.doFinal(plaintext, 0, plaintext.length, payload, IV_SIZE_BYTES);
+
+        return PREFIX + Base64.encodeToString(payload, 0, IV_SIZE_BYTES + written, Base64.NO_WRAP);
+    }
+
+    byte[] decrypt(String encrypted) throws Exception {
+        return decrypt(ByteBuffer.wrap(Base64.decode(encrypted.substring(PREFIX.length()), Base64.NO_WRAP)));
+    }
+
+    /**
+     * Decrypts an {@code iv || ciphertext} payload straight from {@code payload}, which may be a
+     * view into a memory-mapped file.
+     */
+    byte[] decrypt(ByteBuffer payload) throws Exception {
+        if (payload.remaining() <= IV_SIZE_BYTES) {
+            throw new IllegalArgumentException("Envelope payload is too short");
+        }
+        byte[] iv = new byte[IV_SIZE_BYTES];
+        payload.get(iv);
+
+        Cipher c = CipherPool.obtain(AES_GCM, CIPHER_SLOT);
+        c.init(Cipher.DECRYPT_MODE, dataKey(), new GCMParameterSpec(TAG_SIZE_BITS, iv));
+        byte[] plaintext = new byte[c.getOutputSize(payload.remaining())];
+        int written = c.doFinal(payload, ByteBuffer.wrap(plaintext));
+        return written == plaintext.length ? plaintext : Arrays.copyOf(plaintext, written);
+    }
+
+    /**
+     * Returns the in-memory data key, unwrapping it (or creating and wrapping a new one) on
+     * first use.
+     */
+    SecretKey dataKey() throws Exception {
+        SecretKey key = mDataKey;
+        if (key != null) {
+            return key;
+        }
+
+        synchronized (this) {
+            if (mDataKey == null) {
+                mDataKey = loadOrCreateDataKey();
+            }
+            return mDataKey;
+        }
+    }
+
+    private SecretKey loadOrCreateDataKey() throws Exception {
+        String wrapped = mKeyPrefs.getString(WRAPPED_KEY, null);
+        if (wrapped != null) {
+            byte[] raw = mWrapper.unwrap(Base64.decode(wrapped, Base64.NO_WRAP));
+            try {
+                return new SecretKeySpec(raw, "AES");
+            } finally {
+                Arrays.fill(raw, (byte) 0);
+            }
+        }
+
+        // Earlier versions wrapped the key under the keystore key's fixed IV, which lets anyone who
+        // knows one legacy plaintext unwrap it, so a legacy key is rewrapped and the old copy removed.
+        String legacy = mKeyPrefs.getString(LEGACY_WRAPPED_KEY, null);
+        byte[] raw;
+        if (legacy != null) {
+            raw = mWrapper.unwrapLegacy(Base64.decode(legacy, Base64.NO_WRAP));
+        } else {
+            raw = new byte[KEY_SIZE_BYTES];
+            mRandom.nextBytes(raw);
+        }
+        try {
+            String encoded = Base64.encodeToString(mWrapper.wrap(raw), Base64.NO_WRAP);
+            if (!mKeyPrefs.edit().putString(WRAPPED_KEY, encoded).remove(LEGACY_WRAPPED_KEY).commit()) {
+                throw new Exception("Could not persist the envelope data key");
+            }
+            return new SecretKeySpec(raw, "AES");
+        } finally {
+            Arrays.fill(raw, (byte) 0);
+        }
+    }
+}
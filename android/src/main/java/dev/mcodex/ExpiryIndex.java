@@ -0,0 +1,238 @@
+package dev.mcodex.RNSensitiveInfo;
+
+import android.content.SharedPreferences;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Expiry deadlines (wall-clock milliseconds) of the entries that have one. Deadlines are persisted
+ * in a companion SharedPreferences file per namespace and kept in memory once a namespace is
+ * loaded, so checking an entry costs a map lookup and never a decrypt. The owner is notified when
+ * the earliest known deadline passes so it can sweep the expired entries.
+ */
+class ExpiryIndex {
+
+    interface Storage {
+        SharedPreferences open(String namespace);
+    }
+
+    interface Listener {
+        void onDeadline();
+    }
+
+    private static final long MIN_RETRY_DELAY_MS = 1000;
+    private static final long MAX_RETRY_DELAY_MS = 5 * 60 * 1000;
+
+    private final Storage mStorage;
+    private final Listener mListener;
+    private final Map<String, Map<String, Long>> mDeadlines = new HashMap<>();
+    private final ScheduledExecutorService mScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(@NonNull Runnable runnable) {
+            Thread thread = new Thread(runnable, "RNSensitiveInfo-expiry");
+            thread.setPriority(Thread.MIN_PRIORITY);
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private ScheduledFuture<?> mSweep;
+    private long mSweepAt = Long.MAX_VALUE;
+    private long mRetryDelayMillis = MIN_RETRY_DELAY_MS;
+
+    ExpiryIndex(Storage storage, Listener listener) {
+        mStorage = storage;
+        mListener = listener;
+    }
+
+    synchronized boolean isExpired(String namespace, String key) {
+        Long deadline = load(namespace).get(key);
+        return deadline != null && deadline <= System.currentTimeMillis();
+    }
+
+    /**
+     * Returns the expired keys of every namespace loaded so far, by namespace.
+     */
+    synchronized Map<String, List<String>> expired() {
+        long now = System.currentTimeMillis();
+        Map<String, List<String>> expired = new HashMap<>();
+        for (Map.Entry<String, Map<String, Long>> namespace : mDeadlines.entrySet()) {
+            for (Map.Entry<String, Long> entry : namespace.getValue().entrySet()) {
+                if (entry.getValue() <= now) {
+                    List<String> keys = expired.get(namespace.getKey());
+                    if (keys == null) {
+                        keys = new ArrayList<>();
+                        expired.put(namespace.getKey(), keys);
+                    }
+                    keys.add(entry.getKey());
+                }
+            }
+        }
+        return expired;
+    }
+
+    synchronized void set(String namespace, Collection<String> keys, long deadline) throws IOException {
+        Map<String, Long> deadlines = load(namespace);
+        SharedPreferences.Editor editor = mStorage.open(namespace).edit();
+        for (String key : keys) {
+            editor.putLong(key, deadline);
+        }
+        if (!editor.commit()) {
+            throw new IOException("Could not store the expiry of " + keys);
+        }
+        for (String key : keys) {
+            deadlines.put(key, deadline);
+        }
+        schedule(deadline);
+    }
+
+    /**
+     * Returns the current deadline of each of {@code keys}, null for keys without one, to hand to
+     * {@link #restore} if the write setting new deadlines fails.
+     */
+    synchronized Map<String, Long> deadlines(String namespace, Collection<String> keys) {
+        Map<String, Long> deadlines = load(namespace);
+        Map<String, Long> current = new HashMap<>();
+        for (String key : keys) {
+            current.put(key, deadlines.get(key));
+        }
+        return current;
+    }
+
+    /**
+     * Puts back deadlines returned by {@link #deadlines}, removing those of keys that had none.
+     */
+    synchronized void restore(String namespace, Map<String, Long> previous) throws IOException {
+        Map<String, Long> deadlines = load(namespace);
+        SharedPreferences.Editor editor = mStorage.open(namespace).edit();
+        for (Map.Entry<String, Long> entry : previous.entrySet()) {
+            if (entry.getValue() == null) {
+                editor.remove(entry.getKey());
+            } else {
+                editor.putLong(entry.getKey(), entry.getValue());
+            }
+        }
+        if (!editor.commit()) {
+            throw new IOException("Could not restore the expiry of " + previous.keySet());
+        }
+        for (Map.Entry<String, Long> entry : previous.entrySet()) {
+            if (entry.getValue() == null) {
+                deadlines.remove(entry.getKey());
+            } else {
+                deadlines.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Forgets the deadlines of {@code keys}. Only writes to disk when one of them had a deadline.
+     */
+    synchronized void remove(String namespace, Collection<String> keys) throws IOException {
+        Map<String, Long> deadlines = load(namespace);
+        SharedPreferences.Editor editor = null;
+        for (String key : keys) {
+            if (deadlines.containsKey(key)) {
+                if (editor == null) {
+                    editor = mStorage.open(namespace).edit();
+                }
+                editor.remove(key);
+            }
+        }
+        if (editor == null) {
+            return;
+        }
+        if (!editor.commit()) {
+            throw new IOException("Could not remove the expiry of " + keys);
+        }
+        for (String key : keys) {
+            deadlines.remove(key);
+        }
+    }
+
+    synchronized void clear(String namespace) throws IOException {
+        if (!mStorage.open(namespace).edit().clear().commit()) {
+            throw new IOException("Could not clear the expiry of " + namespace);
+        }
+        mDeadlines.put(namespace, new HashMap<String, Long>());
+    }
+
+    /**
+     * Schedules the next notification for the earliest deadline still known.
+     */
+    synchronized void scheduleNext() {
+        mRetryDelayMillis = MIN_RETRY_DELAY_MS;
+        long next = Long.MAX_VALUE;
+        for (Map<String, Long> deadlines : mDeadlines.values()) {
+            for (long deadline : deadlines.values()) {
+                next = Math.min(next, deadline);
+            }
+        }
+        if (next != Long.MAX_VALUE) {
+            schedule(next);
+        }
+    }
+
+    /**
+     * Schedules another notification after a sweep could not run or failed, backing off
+     * exponentially while it keeps failing.
+     */
+    synchronized void retryLater() {
+        schedule(System.currentTimeMillis() + mRetryDelayMillis);
+        mRetryDelayMillis = Math.min(mRetryDelayMillis * 2, MAX_RETRY_DELAY_MS);
+    }
+
+    void shutdown() {
+        mScheduler.shutdownNow();
+    }
+
+    private Map<String, Long> load(String namespace) {
+        Map<String, Long> deadlines = mDeadlines.get(namespace);
+        if (deadlines == null) {
+            deadlines = new HashMap<>();
+            long next = Long.MAX_VALUE;
+            for (Map.Entry<String, ?> entry : mStorage.open(namespace).getAll().entrySet()) {
+                if (entry.getValue() instanceof Long) {
+                    long deadline = (Long) entry.getValue();
+                    deadlines.put(entry.getKey(), deadline);
+                    next = Math.min(next, deadline);
+                }
+            }
+            mDeadlines.put(namespace, deadlines);
+            if (next != Long.MAX_VALUE) {
+                schedule(next);
+            }
+        }
+        return deadlines;
+    }
+
+    private void schedule(long deadline) {
+        if (deadline >= mSweepAt || mScheduler.isShutdown()) {
+            return;
+        }
+        if (mSweep != null) {
+            mSweep.cancel(false);
+        }
+        mSweepAt = deadline;
+        mSweep = mScheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (ExpiryIndex.this) {
+                    mSweep = null;
+                    mSweepAt = Long.MAX_VALUE;
+                }
+                mListener.onDeadline();
+            }
+        }, Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+    }
+}
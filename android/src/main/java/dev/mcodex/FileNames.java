@@ -0,0 +1,36 @@
+package dev.mcodex.RNSensitiveInfo;
+
+import java.nio.charset.Charset;
+
+/**
+ * Maps namespace names to file names. Letters, digits, {@code -}, {@code _} and {@code .} are
+ * kept, so names made of them keep the files they always had; every other byte of the UTF-8 form
+ * becomes {@code %XX}. Since {@code %} itself is escaped, distinct names never share a file. A
+ * leading dot is escaped too, so no name maps to a hidden file, {@code .} or {@code ..}.
+ */
+final class FileNames {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private FileNames() {
+    }
+
+    static String encode(String name) {
+        StringBuilder encoded = new StringBuilder(name.length());
+        for (byte b : name.getBytes(UTF_8)) {
+            char c = (char) (b & 0xFF);
+            if (isKept(c) && !(c == '.' && encoded.length() == 0)) {
+                encoded.append(c);
+            } else {
+                encoded.append('%').append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+            }
+        }
+        return encoded.toString();
+    }
+
+    private static boolean isKept(char c) {
+        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')
+                || c == '-' || c == '_' || c == '.';
+    }
+}
@@ -0,0 +1,93 @@
+package dev.mcodex.RNSensitiveInfo;
+
+import com.facebook.react.bridge.Callback;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.PromiseImpl;
+import com.facebook.react.bridge.ReadableMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Coalesces concurrent reads of the same (namespace, key): the first caller performs the read,
+ * including any biometric prompt, and its outcome settles every caller that joined meanwhile.
+ * A write to the key detaches the read in flight, so callers arriving after the write start a
+ * new one instead of receiving the old value. Results must be plain values such as strings,
+ * since one result is handed to several promises.
+ */
+class InFlightReads {
+
+    private final Map<List<Object>, List<Promise>> mFlights = new HashMap<>();
+
+    /**
+     * Joins the read of {@code key} in flight, or starts one and returns the promise the read
+     * must settle. Returns null when {@code pm} joined an existing read.
+     */
+    Promise join(String namespace, String key, boolean touchID, Promise pm) {
+        final List<Object> flight = Arrays.<Object>asList(namespace, key, touchID);
+        final List<Promise> waiters = new ArrayList<>();
+        synchronized (this) {
+            List<Promise> current = mFlights.get(flight);
+            if (current != null) {
+                current.add(pm);
+                return null;
+            }
+            waiters.add(pm);
+            mFlights.put(flight, waiters);
+        }
+
+        return new PromiseImpl(new Callback() {
+            @Override
+            public void invoke(Object... args) {
+                Object value = args.length > 0 ? args[0] : null;
+                for (Promise waiter : land(flight, waiters)) {
+                    waiter.resolve(value);
+                }
+            }
+        }, new Callback() {
+            @Override
+            public void invoke(Object... args) {
+                ReadableMap error = (ReadableMap) args[0];
+                String code = error.hasKey("code") ? error.getString("code") : null;
+                String message = error.hasKey("message") ? error.getString("message") : null;
+                for (Promise waiter : land(flight, waiters)) {
+                    waiter.reject(code, message);
+                }
+            }
+        });
+    }
+
+    /**
+     * Lets later reads of {@code keys} start their own flight.
+     */
+    synchronized void detach(String namespace, Collection<String> keys) {
+        if (mFlights.isEmpty()) {
+            return;
+        }
+        for (String key : keys) {
+            mFlights.remove(Arrays.<Object>asList(namespace, key, false));
+            mFlights.remove(Arrays.<Object>asList(namespace, key, true));
+        }
+    }
+
+    synchronized void detachNamespace(String namespace) {
+        Iterator<List<Object>> flights = mFlights.keySet().iterator();
+        while (flights.hasNext()) {
+            if (flights.next().get(0).equals(namespace)) {
+                flights.remove();
+            }
+        }
+    }
+
+    private synchronized List<Promise> land(List<Object> flight, List<Promise> waiters) {
+        if (mFlights.get(flight) == waiters) {
+            mFlights.remove(flight);
+        }
+        return new ArrayList<>(waiters);
+    }
+}
@@ -0,0 +1,112 @@
+package dev.mcodex.RNSensitiveInfo;
+
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.SecretKey;
+
+/**
+ * Caches the entries resolved from the Android Keystore so that every encrypt/decrypt
+ * does not pay a binder round trip into the keystore daemon.
+ *
+ * This is also the only way the module touches the keystore: {@link KeyStore} is not guaranteed
+ * to be thread-safe, so lookups, deletes and key generation are serialized here, while cached
+ * entries are served without locking.
+ */
+class KeyHandleCache {
+
+    interface Generator {
+        void generate() throws Exception;
+    }
+
+    private final KeyStore mKeyStore;
+    private final Object mKeyStoreLock = new Object();
+    private final ConcurrentHashMap<String, KeyStore.Entry> mEntries = new ConcurrentHashMap<>();
+    private final AtomicLong mHits = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+
+    KeyHandleCache(KeyStore keyStore) {
+        mKeyStore = keyStore;
+    }
+
+    KeyStore.Entry getEntry(String alias) throws Exception {
+        KeyStore.Entry entry = mEntries.get(alias);
+        if (entry != null) {
+            mHits.incrementAndGet();
+            return entry;
+        }
+
+        synchronized (mKeyStoreLock) {
+            entry = mEntries.get(alias);
+            if (entry != null) {
+                mHits.incrementAndGet();
+                return entry;
+            }
+            mMisses.incrementAndGet();
+            entry = mKeyStore.getEntry(alias, null);
+            if (entry != null) {
+                mEntries.put(alias, entry);
+            }
+            return entry;
+        }
+    }
+
+    /**
+     * Generates the key of {@code alias} with {@code generator} unless it already exists.
+     */
+    void ensure(String alias, Generator generator) throws Exception {
+        synchronized (mKeyStoreLock) {
+            if (!mKeyStore.containsAlias(alias)) {
+                generator.generate();
+                mEntries.remove(alias);
+            }
+        }
+    }
+
+    /**
+     * Deletes the key of {@code alias} and generates a new one, without letting another thread
+     * observe the alias in between.
+     */
+    void replace(String alias, Generator generator) throws Exception {
+        synchronized (mKeyStoreLock) {
+            mEntries.remove(alias);
+            if (mKeyStore.containsAlias(alias)) {
+                mKeyStore.deleteEntry(alias);
+            }
+            generator.generate();
+            mEntries.remove(alias);
+        }
+    }
+
+    SecretKey getSecretKey(String alias) throws Exception {
+        KeyStore.Entry entry = getEntry(alias);
+        return entry != null ? ((KeyStore.SecretKeyEntry) entry).getSecretKey() : null;
+    }
+
+    PublicKey getPublicKey(String alias) throws Exception {
+        return ((KeyStore.PrivateKeyEntry) getEntry(alias)).getCertificate().getPublicKey();
+    }
+
+    PrivateKey getPrivateKey(String alias) throws Exception {
+        return ((KeyStore.PrivateKeyEntry) getEntry(alias)).getPrivateKey();
+    }
+
+    void invalidate(String alias) {
+        mEntries.remove(alias);
+    }
+
+    void invalidateAll() {
+        mEntries.clear();
+    }
+
+    long getHits() {
+        return mHits.get();
+    }
+
+    long getMisses() {
+        return mMisses.get();
+    }
+}
@@ -0,0 +1,137 @@
+package dev.mcodex.RNSensitiveInfo;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Sorted in-memory set of the keys of each namespace, so key listings and key-ordered scans never
+ * read or decrypt values. A namespace is loaded from its backend on first use and then kept up to
+ * date by the module's writes; {@link #invalidate} forces a reload.
+ */
+class KeyIndex {
+
+    interface Loader {
+        Set<String> load(String namespace) throws IOException;
+    }
+
+    private interface Query<T> {
+        T run(TreeSet<String> keys);
+    }
+
+    private final Loader mLoader;
+    private final Map<String, TreeSet<String>> mKeys = new HashMap<>();
+    // Bumped whenever a namespace that may be loading changes, so a stale load is not installed.
+    private long mGeneration;
+
+    KeyIndex(Loader loader) {
+        mLoader = loader;
+    }
+
+    /**
+     * Returns the keys of {@code namespace} in ascending order.
+     */
+    List<String> keys(String namespace) throws IOException {
+        return query(namespace, new Query<List<String>>() {
+            @Override
+            public List<String> run(TreeSet<String> keys) {
+                return new ArrayList<>(keys);
+            }
+        });
+    }
+
+    /**
+     * Returns at most {@code limit} keys of {@code namespace} in ascending order, starting after
+     * {@code cursor} or from the first key when it is null.
+     */
+    List<String> keysAfter(String namespace, final String cursor, final int limit) throws IOException {
+        return query(namespace, new Query<List<String>>() {
+            @Override
+            public List<String> run(TreeSet<String> keys) {
+                List<String> page = new ArrayList<>(Math.min(limit, keys.size()));
+                for (String key : cursor != null ? keys.tailSet(cursor, false) : keys) {
+                    if (page.size() == limit) {
+                        break;
+                    }
+                    page.add(key);
+                }
+                return page;
+            }
+        });
+    }
+
+    /**
+     * Returns the keys of {@code namespace} that start with {@code prefix}, in ascending order.
+     */
+    List<String> keysWithPrefix(String namespace, final String prefix) throws IOException {
+        return query(namespace, new Query<List<String>>() {
+            @Override
+            public List<String> run(TreeSet<String> keys) {
+                List<String> matches = new ArrayList<>();
+                // Keys sharing a prefix are contiguous in sort order and start at the prefix itself.
+                for (String key : keys.tailSet(prefix, true)) {
+                    if (!key.startsWith(prefix)) {
+                        break;
+                    }
+                    matches.add(key);
+                }
+                return matches;
+            }
+        });
+    }
+
+    synchronized void update(String namespace, Collection<String> puts, Collection<String> deletes) {
+        TreeSet<String> keys = mKeys.get(namespace);
+        if (keys != null) {
+            // Not removeAll(), which scans a List argument once per key when it is the larger side.
+            for (String key : deletes) {
+                keys.remove(key);
+            }
+            keys.addAll(puts);
+        } else {
+            mGeneration++;
+        }
+    }
+
+    synchronized void invalidate(String namespace) {
+        mKeys.remove(namespace);
+        mGeneration++;
+    }
+
+    synchronized void invalidateAll() {
+        mKeys.clear();
+        mGeneration++;
+    }
+
+    /**
+     * Runs {@code query} on the keys of {@code namespace}, loading them first if needed. The loader
+     * reads the backend, which takes the module's own locks, so it runs outside this monitor. A
+     * load that raced with a change is only used to answer this query and is not kept.
+     */
+    private <T> T query(String namespace, Query<T> query) throws IOException {
+        long generation;
+        synchronized (this) {
+            TreeSet<String> keys = mKeys.get(namespace);
+            if (keys != null) {
+                return query.run(keys);
+            }
+            generation = mGeneration;
+        }
+        TreeSet<String> keys = new TreeSet<>(mLoader.load(namespace));
+        synchronized (this) {
+            TreeSet<String> loaded = mKeys.get(namespace);
+            if (loaded != null) {
+                return query.run(loaded);
+            }
+            if (generation == mGeneration) {
+                mKeys.put(namespace, keys);
+            }
+            return query.run(keys);
+        }
+    }
+}
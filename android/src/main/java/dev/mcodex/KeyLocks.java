@@ -0,0 +1,79 @@
+package dev.mcodex.RNSensitiveInfo;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Striped read/write locks over (namespace, key) pairs. Calls on different keys usually take
+ * different stripes and run in parallel, readers of one key share its stripe, and a
+ * check-then-write on one key is atomic with respect to every other write of that key. Stripes
+ * are always taken in ascending order, so batches cannot deadlock.
+ */
+class KeyLocks {
+
+    private static final int STRIPES = 64;
+
+    private final ReadWriteLock[] mStripes = new ReadWriteLock[STRIPES];
+
+    KeyLocks() {
+        for (int i = 0; i < STRIPES; i++) {
+            mStripes[i] = new ReentrantReadWriteLock();
+        }
+    }
+
+    /**
+     * Locks the stripe of {@code key} for reading and returns it for {@link #release}.
+     */
+    Lock acquireRead(String namespace, String key) {
+        Lock lock = mStripes[stripe(namespace, key)].readLock();
+        lock.lock();
+        return lock;
+    }
+
+    /**
+     * Locks the stripes of {@code keys} for writing and returns them for {@link #release}.
+     */
+    List<Lock> acquire(String namespace, Collection<String> keys) {
+        TreeSet<Integer> stripes = new TreeSet<>();
+        for (String key : keys) {
+            stripes.add(stripe(namespace, key));
+        }
+        List<Lock> locks = new ArrayList<>(stripes.size());
+        for (int stripe : stripes) {
+            Lock lock = mStripes[stripe].writeLock();
+            lock.lock();
+            locks.add(lock);
+        }
+        return locks;
+    }
+
+    /**
+     * Locks every stripe, for operations that touch a whole namespace.
+     */
+    List<Lock> acquireAll() {
+        List<Lock> locks = new ArrayList<>(STRIPES);
+        for (ReadWriteLock stripe : mStripes) {
+            Lock lock = stripe.writeLock();
+            lock.lock();
+            locks.add(lock);
+        }
+        return locks;
+    }
+
+    static void release(List<Lock> locks) {
+        for (int i = locks.size() - 1; i >= 0; i--) {
+            locks.get(i).unlock();
+        }
+    }
+
+    private static int stripe(String namespace, String key) {
+        int hash = namespace.hashCode() * 31 + key.hashCode();
+        hash ^= hash >>> 16;
+        return hash & (STRIPES - 1);
+    }
+}
@@ -0,0 +1,613 @@
+package dev.mcodex.RNSensitiveInfo;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only key/value store. Every write appends records to the active segment file and
+ * fsyncs it, so its cost depends on the size of the written values and not on the size of the
+ * store. An in-memory index maps each key to the location of its latest value; superseded records
+ * are reclaimed by a background compaction that rewrites the live entries into a snapshot
+ * segment.
+ *
+ * Segment layout: a header (magic, version, kind) followed by records of
+ * {@code [type][keyLength][valueLength][key][value][crc32]}. A snapshot segment replaces
+ * everything written before it. Torn records at the end of a segment are truncated on open, and
+ * segments whose header is torn are deleted.
+ *
+ * Values are stored in the binary {@link ValueFormat}. Records written by older versions hold
+ * UTF-8 text; they are still read and are converted when compaction rewrites them.
+ */
+class LogStructuredStore implements BinaryStorageBackend {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final int MAGIC = 0x524e5349;
+    private static final byte VERSION = 1;
+    private static final byte SEGMENT_APPEND = 0;
+    private static final byte SEGMENT_SNAPSHOT = 1;
+    private static final int HEADER_SIZE = 6;
+
+    private static final byte RECORD_PUT = 1;
+    private static final byte RECORD_DELETE = 2;
+    private static final int RECORD_PREFIX_SIZE = 9;
+    private static final int RECORD_OVERHEAD = RECORD_PREFIX_SIZE + 4;
+
+    private static final long COMPACTION_MIN_DEAD_BYTES = 64 * 1024;
+
+    private static final String STORE_DIRECTORY = "RNSensitiveInfo";
+
+    static final StorageBackend.Factory FACTORY = new StorageBackend.Factory() {
+        @Override
+        public StorageBackend create(Context context, String name) throws IOException {
+            return open(new File(new File(context.getNoBackupFilesDir(), STORE_DIRECTORY), FileNames.encode(name)));
+        }
+    };
+
+    private static final ExecutorService sCompactionExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(@NonNull Runnable runnable) {
+            Thread thread = new Thread(runnable, "RNSensitiveInfo-compaction");
+            thread.setPriority(Thread.MIN_PRIORITY);
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private static class Location {
+        final int segment;
+        final long valueOffset;
+        final int valueLength;
+        final int recordSize;
+
+        Location(int segment, long valueOffset, int valueLength, int recordSize) {
+            this.segment = segment;
+            this.valueOffset = valueOffset;
+            this.valueLength = valueLength;
+            this.recordSize = recordSize;
+        }
+    }
+
+    private final File mDirectory;
+    private final HashMap<String, Location> mIndex = new HashMap<>();
+    private final HashMap<Integer, RandomAccessFile> mReaders = new HashMap<>();
+    private final List<Integer> mSegments = new ArrayList<>();
+
+    private FileOutputStream mActiveOutput;
+    private int mActiveSegment;
+    private long mActiveSize;
+    private long mLiveBytes;
+    private long mDeadBytes;
+    private boolean mCompacting;
+    // Bumped by clear() so a compaction that started before it does not bring entries back.
+    private int mGeneration;
+
+    private LogStructuredStore(File directory) {
+        mDirectory = directory;
+    }
+
+    static LogStructuredStore open(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        LogStructuredStore store = new LogStructuredStore(directory);
+        store.recover();
+        return store;
+    }
+
+    @Override
+    public synchronized boolean contains(String key) {
+        return mIndex.containsKey(key);
+    }
+
+    @Override
+    public synchronized Set<String> keys() {
+        return new HashSet<>(mIndex.keySet());
+    }
+
+    @Override
+    public String get(String key) throws IOException {
+        byte[] value = getBytes(key);
+        if (value == null) {
+            return null;
+        }
+        return ValueFormat.isEncoded(value) ? ValueFormat.toText(ByteBuffer.wrap(value)) : new String(value, UTF_8);
+    }
+
+    @Override
+    public ByteBuffer getBuffer(String key) throws IOException {
+        byte[] value = getBytes(key);
+        if (value == null) {
+            return null;
+        }
+        return ByteBuffer.wrap(ValueFormat.isEncoded(value) ? value : ValueFormat.fromText(new String(value, UTF_8)))
+                .asReadOnlyBuffer();
+    }
+
+    private synchronized byte[] getBytes(String key) throws IOException {
+        Location location = mIndex.get(key);
+        if (location == null) {
+            return null;
+        }
+        RandomAccessFile reader = reader(location.segment);
+        byte[] value = new byte[location.valueLength];
+        reader.seek(location.valueOffset);
+        reader.readFully(value);
+        return value;
+    }
+
+    @Override
+    public synchronized Map<String, String> getAll() throws IOException {
+        Map<String, String> entries = new HashMap<>(mIndex.size());
+        for (String key : mIndex.keySet()) {
+            entries.put(key, get(key));
+        }
+        return entries;
+    }
+
+    @Override
+    public void write(Map<String, String> puts, Collection<String> deletes) throws IOException {
+        append(puts, deletes, true);
+    }
+
+    @Override
+    public void apply(Map<String, String> puts, Collection<String> deletes) throws IOException {
+        append(puts, deletes, false);
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        mActiveOutput.getFD().sync();
+    }
+
+    /**
+     * Appends all puts and deletes as one write, fsynced when {@code sync} is set. On failure the
+     * segment is truncated back, so a batch is either fully applied or not at all.
+     */
+    private synchronized void append(Map<String, String> puts, Collection<String> deletes, boolean sync) throws IOException {
+        ByteArrayOutputStream batch = new ByteArrayOutputStream();
+        Map<String, Location> locations = new HashMap<>(puts.size());
+
+        // Deletes go first so that, as with SharedPreferences, a put of the same key wins.
+        int deleteBytes = 0;
+        for (String key : deletes) {
+            deleteBytes += encodeRecord(batch, RECORD_DELETE, key.getBytes(UTF_8), new byte[0]);
+        }
+        for (Map.Entry<String, String> entry : puts.entrySet()) {
+            byte[] key = entry.getKey().getBytes(UTF_8);
+            byte[] value = ValueFormat.fromText(entry.getValue());
+            long valueOffset = mActiveSize + batch.size() + RECORD_PREFIX_SIZE + key.length;
+            int recordSize = encodeRecord(batch, RECORD_PUT, key, value);
+            locations.put(entry.getKey(), new Location(mActiveSegment, valueOffset, value.length, recordSize));
+        }
+
+        try {
+            mActiveOutput.write(batch.toByteArray());
+            if (sync) {
+                mActiveOutput.getFD().sync();
+            }
+        } catch (IOException e) {
+            mActiveOutput.getChannel().truncate(mActiveSize);
+            throw e;
+        }
+        mActiveSize += batch.size();
+
+        for (String key : deletes) {
+            Location previous = mIndex.remove(key);
+            if (previous != null) {
+                mLiveBytes -= previous.recordSize;
+                mDeadBytes += previous.recordSize;
+            }
+        }
+        for (Map.Entry<String, Location> entry : locations.entrySet()) {
+            Location previous = mIndex.put(entry.getKey(), entry.getValue());
+            if (previous != null) {
+                mLiveBytes -= previous.recordSize;
+                mDeadBytes += previous.recordSize;
+            }
+            mLiveBytes += entry.getValue().recordSize;
+        }
+        mDeadBytes += deleteBytes;
+
+        maybeScheduleCompaction();
+    }
+
+    /**
+     * Starts an empty snapshot segment and deletes every older one. The snapshot is synced first,
+     * so a crash in between still replays to an empty store.
+     */
+    @Override
+    public synchronized void clear() throws IOException {
+        int segment = mActiveSegment + 1;
+        FileOutputStream output = new FileOutputStream(segmentFile(segment));
+        try {
+            writeHeader(output, SEGMENT_SNAPSHOT);
+            output.getFD().sync();
+        } catch (IOException e) {
+            output.close();
+            segmentFile(segment).delete();
+            throw e;
+        }
+
+        mGeneration++;
+        mActiveOutput.close();
+        closeReaders();
+        for (int previous : mSegments) {
+            segmentFile(previous).delete();
+        }
+        mSegments.clear();
+        mSegments.add(segment);
+        mActiveOutput = output;
+        mActiveSegment = segment;
+        mActiveSize = HEADER_SIZE;
+        mIndex.clear();
+        mLiveBytes = 0;
+        mDeadBytes = 0;
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            mActiveOutput.close();
+        } catch (IOException e) {
+            Log.d("RNSensitiveInfo", "Could not close segment: " + e.getMessage());
+        }
+        closeReaders();
+    }
+
+    private void recover() throws IOException {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (name.endsWith(TEMP_SUFFIX)) {
+                    // An interrupted compaction; the segments it would have replaced are intact.
+                    file.delete();
+                } else if (name.endsWith(SEGMENT_SUFFIX)) {
+                    mSegments.add(Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+                }
+            }
+        }
+        Collections.sort(mSegments);
+
+        for (int i = 0; i < mSegments.size(); i++) {
+            File file = segmentFile(mSegments.get(i));
+            if (hasTornHeader(file)) {
+                // A crash while a segment was being started; it holds no records.
+                Log.w("RNSensitiveInfo", "Deleting segment with a torn header " + file);
+                if (!file.delete()) {
+                    throw new IOException("Could not delete " + file);
+                }
+                mSegments.remove(i--);
+                continue;
+            }
+            if (replay(mSegments.get(i))) {
+                // Everything before a snapshot is obsolete.
+                for (int j = 0; j < i; j++) {
+                    segmentFile(mSegments.get(j)).delete();
+                }
+                mSegments.subList(0, i).clear();
+                i = 0;
+            }
+        }
+
+        if (mSegments.isEmpty()) {
+            startSegment(1);
+        } else {
+            mActiveSegment = mSegments.get(mSegments.size() - 1);
+            mActiveOutput = new FileOutputStream(segmentFile(mActiveSegment), true);
+            mActiveSize = segmentFile(mActiveSegment).length();
+        }
+    }
+
+    /**
+     * Returns whether {@code file} is shorter than a segment header or its header was never
+     * written, which is what a crash before the header was synced leaves behind.
+     */
+    private static boolean hasTornHeader(File file) throws IOException {
+        if (file.length() < HEADER_SIZE) {
+            return true;
+        }
+        byte[] header = new byte[HEADER_SIZE];
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            in.readFully(header);
+        } finally {
+            in.close();
+        }
+        for (byte b : header) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Replays one segment into the index and returns whether it was a snapshot.
+     */
+    private boolean replay(int segment) throws IOException {
+        File file = segmentFile(segment);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        boolean snapshot;
+        long position = HEADER_SIZE;
+        try {
+            if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+                throw new IOException("Unsupported segment " + file);
+            }
+            snapshot = in.readByte() == SEGMENT_SNAPSHOT;
+            if (snapshot) {
+                mIndex.clear();
+                mLiveBytes = 0;
+                mDeadBytes = 0;
+            }
+
+            byte[] prefix = new byte[RECORD_PREFIX_SIZE];
+            CRC32 crc = new CRC32();
+            while (true) {
+                try {
+                    in.readFully(prefix);
+                    ByteBuffer header = ByteBuffer.wrap(prefix);
+                    byte type = header.get();
+                    int keyLength = header.getInt();
+                    int valueLength = header.getInt();
+                    if ((type != RECORD_PUT && type != RECORD_DELETE) || keyLength < 0 || valueLength < 0
+                            || position + RECORD_OVERHEAD + keyLength + valueLength > file.length()) {
+                        break;
+                    }
+                    byte[] key = new byte[keyLength];
+                    byte[] value = new byte[valueLength];
+                    in.readFully(key);
+                    in.readFully(value);
+
+                    crc.reset();
+                    crc.update(prefix);
+                    crc.update(key);
+                    crc.update(value);
+                    if ((int) crc.getValue() != in.readInt()) {
+                        break;
+                    }
+
+                    int recordSize = RECORD_OVERHEAD + keyLength + valueLength;
+                    String keyString = new String(key, UTF_8);
+                    Location previous = type == RECORD_PUT
+                            ? mIndex.put(keyString, new Location(segment, position + RECORD_PREFIX_SIZE + keyLength, valueLength, recordSize))
+                            : mIndex.remove(keyString);
+                    if (previous != null) {
+                        mLiveBytes -= previous.recordSize;
+                        mDeadBytes += previous.recordSize;
+                    }
+                    if (type == RECORD_PUT) {
+                        mLiveBytes += recordSize;
+                    } else {
+                        mDeadBytes += recordSize;
+                    }
+                    position += recordSize;
+                } catch (EOFException e) {
+                    break;
+                }
+            }
+        } finally {
+            in.close();
+        }
+
+        if (position < file.length()) {
+            Log.w("RNSensitiveInfo", "Truncating torn records at the end of " + file);
+            RandomAccessFile truncate = new RandomAccessFile(file, "rw");
+            try {
+                truncate.setLength(position);
+            } finally {
+                truncate.close();
+            }
+        }
+        return snapshot;
+    }
+
+    private void startSegment(int segment) throws IOException {
+        FileOutputStream output = new FileOutputStream(segmentFile(segment));
+        writeHeader(output, SEGMENT_APPEND);
+        output.getFD().sync();
+
+        if (mActiveOutput != null) {
+            mActiveOutput.close();
+        }
+        mActiveOutput = output;
+        mActiveSegment = segment;
+        mActiveSize = HEADER_SIZE;
+        mSegments.add(segment);
+    }
+
+    private void maybeScheduleCompaction() {
+        if (mCompacting || mDeadBytes < COMPACTION_MIN_DEAD_BYTES || mDeadBytes <= mLiveBytes) {
+            return;
+        }
+        mCompacting = true;
+        sCompactionExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    compact();
+                } catch (IOException e) {
+                    Log.w("RNSensitiveInfo", "Compaction failed", e);
+                } finally {
+                    synchronized (LogStructuredStore.this) {
+                        mCompacting = false;
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Seals the active segment and rewrites every live entry into a snapshot segment. Writers only
+     * wait for the seal and for the final swap, not for the copy itself.
+     */
+    private void compact() throws IOException {
+        final int sealed;
+        final int snapshotSegment;
+        final Map<String, Location> snapshot;
+        final int generation;
+        synchronized (this) {
+            generation = mGeneration;
+            sealed = mActiveSegment;
+            snapshotSegment = sealed + 1;
+            startSegment(sealed + 2);
+            snapshot = new HashMap<>(mIndex);
+        }
+
+        File temp = new File(mDirectory, snapshotSegment + TEMP_SUFFIX);
+        Map<String, Location> relocated = new HashMap<>(snapshot.size());
+        Map<Integer, RandomAccessFile> sources = new HashMap<>();
+        FileOutputStream output = new FileOutputStream(temp);
+        try {
+            writeHeader(output, SEGMENT_SNAPSHOT);
+            long position = HEADER_SIZE;
+            ByteArrayOutputStream record = new ByteArrayOutputStream();
+            for (Map.Entry<String, Location> entry : snapshot.entrySet()) {
+                Location location = entry.getValue();
+                RandomAccessFile source = sources.get(location.segment);
+                if (source == null) {
+                    source = new RandomAccessFile(segmentFile(location.segment), "r");
+                    sources.put(location.segment, source);
+                }
+                byte[] key = entry.getKey().getBytes(UTF_8);
+                byte[] value = new byte[location.valueLength];
+                source.seek(location.valueOffset);
+                source.readFully(value);
+                if (!ValueFormat.isEncoded(value)) {
+                    value = ValueFormat.fromText(new String(value, UTF_8));
+                }
+
+                record.reset();
+                int recordSize = encodeRecord(record, RECORD_PUT, key, value);
+                record.writeTo(output);
+                relocated.put(entry.getKey(), new Location(snapshotSegment, position + RECORD_PREFIX_SIZE + key.length, value.length, recordSize));
+                position += recordSize;
+            }
+            output.getFD().sync();
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        } finally {
+            output.close();
+            for (RandomAccessFile source : sources.values()) {
+                source.close();
+            }
+        }
+
+        synchronized (this) {
+            if (generation != mGeneration) {
+                // The store was cleared while the snapshot was written.
+                temp.delete();
+                return;
+            }
+            if (!temp.renameTo(segmentFile(snapshotSegment))) {
+                temp.delete();
+                throw new IOException("Could not install snapshot segment " + snapshotSegment);
+            }
+            mSegments.add(snapshotSegment);
+            Collections.sort(mSegments);
+
+            for (Map.Entry<String, Location> entry : relocated.entrySet()) {
+                // Entries written after the seal already point at the newer active segment.
+                if (mIndex.get(entry.getKey()) == snapshot.get(entry.getKey())) {
+                    mIndex.put(entry.getKey(), entry.getValue());
+                }
+            }
+
+            for (int i = mSegments.size() - 1; i >= 0; i--) {
+                int segment = mSegments.get(i);
+                if (segment <= sealed) {
+                    RandomAccessFile reader = mReaders.remove(segment);
+                    if (reader != null) {
+                        reader.close();
+                    }
+                    segmentFile(segment).delete();
+                    mSegments.remove(i);
+                }
+            }
+
+            mLiveBytes = 0;
+            for (Location location : mIndex.values()) {
+                mLiveBytes += location.recordSize;
+            }
+            long stored = segmentFile(snapshotSegment).length() + mActiveSize - 2 * HEADER_SIZE;
+            mDeadBytes = Math.max(0, stored - mLiveBytes);
+        }
+    }
+
+    private RandomAccessFile reader(int segment) throws IOException {
+        RandomAccessFile reader = mReaders.get(segment);
+        if (reader == null) {
+            reader = new RandomAccessFile(segmentFile(segment), "r");
+            mReaders.put(segment, reader);
+        }
+        return reader;
+    }
+
+    private void closeReaders() {
+        for (RandomAccessFile reader : mReaders.values()) {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                Log.d("RNSensitiveInfo", "Could not close segment: " + e.getMessage());
+            }
+        }
+        mReaders.clear();
+    }
+
+    private File segmentFile(int segment) {
+        return new File(mDirectory, segment + SEGMENT_SUFFIX);
+    }
+
+    private static void writeHeader(FileOutputStream output, byte kind) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).put(VERSION).put(kind);
+        output.write(header.array());
+    }
+
+    private static int encodeRecord(ByteArrayOutputStream out, byte type, byte[] key, byte[] value) {
+        ByteBuffer prefix = ByteBuffer.allocate(RECORD_PREFIX_SIZE);
+        prefix.put(type).putInt(key.length).putInt(value.length);
+
+        CRC32 crc = new CRC32();
+        crc.update(prefix.array());
+        crc.update(key);
+        crc.update(value);
+
+        out.write(prefix.array(), 0, RECORD_PREFIX_SIZE);
+        out.write(key, 0, key.length);
+        out.write(value, 0, value.length);
+        out.write(ByteBuffer.allocate(4).putInt((int) crc.getValue()).array(), 0, 4);
+        return RECORD_OVERHEAD + key.length + value.length;
+    }
+}
@@ -0,0 +1,389 @@
+package dev.mcodex.RNSensitiveInfo;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Key/value store backed by a memory-mapped file. Values are kept in the binary
+ * {@link ValueFormat}, and only a compact key index lives on the heap, so reads come from the page
+ * cache instead of a parsed copy of the whole file.
+ *
+ * File layout: a header ({@code [magic][version][dataEnd]}) followed by appended records of
+ * {@code [keyLength][valueLength][crc32][key][value]}, where a negative value length marks a
+ * delete. Commits only advance the data end after the records are flushed. Apply writes do not
+ * order the two, so loading checks every record against the data end and its checksum and stops
+ * at the first torn one. Superseded records are dropped by rewriting the file once they outweigh
+ * the live ones. Files of the first version, without checksums, are rewritten when opened.
+ */
+class MappedValueStore implements BinaryStorageBackend {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String STORE_DIRECTORY = "RNSensitiveInfo";
+    private static final String FILE_SUFFIX = ".map";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final int MAGIC = 0x524e534d;
+    private static final byte VERSION = 2;
+    private static final byte LEGACY_VERSION = 1;
+    private static final int DATA_END_OFFSET = 8;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_HEADER_SIZE = 12;
+    private static final int LEGACY_RECORD_HEADER_SIZE = 8;
+    private static final int INITIAL_CAPACITY = 64 * 1024;
+    private static final int COMPACTION_MIN_DEAD_BYTES = 64 * 1024;
+
+    static final StorageBackend.Factory FACTORY = new StorageBackend.Factory() {
+        @Override
+        public StorageBackend create(Context context, String name) throws IOException {
+            File directory = new File(context.getNoBackupFilesDir(), STORE_DIRECTORY);
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Could not create " + directory);
+            }
+            return open(new File(directory, FileNames.encode(name) + FILE_SUFFIX));
+        }
+    };
+
+    private static class Slot {
+        final int valueOffset;
+        final int valueLength;
+        final int recordSize;
+
+        Slot(int valueOffset, int valueLength, int recordSize) {
+            this.valueOffset = valueOffset;
+            this.valueLength = valueLength;
+            this.recordSize = recordSize;
+        }
+    }
+
+    private final File mFile;
+    private final HashMap<String, Slot> mIndex = new HashMap<>();
+    private RandomAccessFile mRandomAccessFile;
+    private MappedByteBuffer mBuffer;
+    private int mDataEnd;
+    private long mLiveBytes;
+    private long mDeadBytes;
+
+    private MappedValueStore(File file) {
+        mFile = file;
+    }
+
+    static MappedValueStore open(File file) throws IOException {
+        MappedValueStore store = new MappedValueStore(file);
+        store.load();
+        return store;
+    }
+
+    @Override
+    public synchronized ByteBuffer getBuffer(String key) {
+        Slot slot = mIndex.get(key);
+        if (slot == null) {
+            return null;
+        }
+        ByteBuffer view = mBuffer.duplicate();
+        view.limit(slot.valueOffset + slot.valueLength).position(slot.valueOffset);
+        return view.slice().asReadOnlyBuffer();
+    }
+
+    @Override
+    public String get(String key) {
+        ByteBuffer value = getBuffer(key);
+        return value != null ? ValueFormat.toText(value) : null;
+    }
+
+    @Override
+    public synchronized boolean contains(String key) {
+        return mIndex.containsKey(key);
+    }
+
+    @Override
+    public synchronized Set<String> keys() {
+        return new HashSet<>(mIndex.keySet());
+    }
+
+    @Override
+    public synchronized Map<String, String> getAll() {
+        Map<String, String> entries = new HashMap<>(mIndex.size());
+        for (String key : mIndex.keySet()) {
+            entries.put(key, get(key));
+        }
+        return entries;
+    }
+
+    @Override
+    public void write(Map<String, String> puts, Collection<String> deletes) throws IOException {
+        writeBytes(encode(puts), deletes, true);
+    }
+
+    @Override
+    public void apply(Map<String, String> puts, Collection<String> deletes) throws IOException {
+        writeBytes(encode(puts), deletes, false);
+    }
+
+    @Override
+    public synchronized void flush() {
+        mBuffer.force();
+    }
+
+    /**
+     * Appends the records of one batch and then publishes them by advancing the data end. With
+     * {@code sync} the records are forced to disk before and after the data end moves.
+     */
+    synchronized void writeBytes(Map<String, byte[]> puts, Collection<String> deletes, boolean sync) throws IOException {
+        int batchSize = 0;
+        for (String key : deletes) {
+            batchSize += RECORD_HEADER_SIZE + key.getBytes(UTF_8).length;
+        }
+        for (Map.Entry<String, byte[]> entry : puts.entrySet()) {
+            batchSize += RECORD_HEADER_SIZE + entry.getKey().getBytes(UTF_8).length + entry.getValue().length;
+        }
+        ensureCapacity(mDataEnd + batchSize);
+
+        ByteBuffer out = mBuffer.duplicate();
+        out.position(mDataEnd);
+        int deleteBytes = 0;
+        for (String key : deletes) {
+            byte[] keyBytes = key.getBytes(UTF_8);
+            putRecord(out, keyBytes, -1, new byte[0]);
+            deleteBytes += RECORD_HEADER_SIZE + keyBytes.length;
+        }
+        Map<String, Slot> slots = new HashMap<>(puts.size());
+        for (Map.Entry<String, byte[]> entry : puts.entrySet()) {
+            byte[] keyBytes = entry.getKey().getBytes(UTF_8);
+            byte[] value = entry.getValue();
+            int valueOffset = putRecord(out, keyBytes, value.length, value);
+            slots.put(entry.getKey(), new Slot(valueOffset, value.length, RECORD_HEADER_SIZE + keyBytes.length + value.length));
+        }
+        if (sync) {
+            mBuffer.force();
+        }
+        mDataEnd = out.position();
+        mBuffer.putInt(DATA_END_OFFSET, mDataEnd);
+        if (sync) {
+            mBuffer.force();
+        }
+
+        for (String key : deletes) {
+            retire(mIndex.remove(key));
+        }
+        for (Map.Entry<String, Slot> entry : slots.entrySet()) {
+            retire(mIndex.put(entry.getKey(), entry.getValue()));
+            mLiveBytes += entry.getValue().recordSize;
+        }
+        mDeadBytes += deleteBytes;
+
+        if (mDeadBytes >= COMPACTION_MIN_DEAD_BYTES && mDeadBytes > mLiveBytes) {
+            compact();
+        }
+    }
+
+    /**
+     * Swaps in an empty file the same way compaction does, so buffers already handed out stay
+     * valid.
+     */
+    @Override
+    public synchronized void clear() throws IOException {
+        mIndex.clear();
+        mLiveBytes = 0;
+        compact();
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            mRandomAccessFile.close();
+        } catch (IOException e) {
+            Log.d("RNSensitiveInfo", "Could not close " + mFile + ": " + e.getMessage());
+        }
+    }
+
+    private static Map<String, byte[]> encode(Map<String, String> puts) {
+        Map<String, byte[]> encoded = new HashMap<>(puts.size());
+        for (Map.Entry<String, String> entry : puts.entrySet()) {
+            encoded.put(entry.getKey(), ValueFormat.fromText(entry.getValue()));
+        }
+        return encoded;
+    }
+
+    private void retire(Slot previous) {
+        if (previous != null) {
+            mLiveBytes -= previous.recordSize;
+            mDeadBytes += previous.recordSize;
+        }
+    }
+
+    /**
+     * Appends one record at the position of {@code out} and returns the offset of its value.
+     */
+    private static int putRecord(ByteBuffer out, byte[] key, int valueLength, byte[] value) {
+        out.putInt(key.length).putInt(valueLength).putInt(checksum(key, valueLength, value)).put(key);
+        int valueOffset = out.position();
+        out.put(value);
+        return valueOffset;
+    }
+
+    private static int checksum(byte[] key, int valueLength, byte[] value) {
+        CRC32 crc = new CRC32();
+        crc.update(ByteBuffer.allocate(LEGACY_RECORD_HEADER_SIZE).putInt(key.length).putInt(valueLength).array());
+        crc.update(key);
+        crc.update(value);
+        return (int) crc.getValue();
+    }
+
+    private void load() throws IOException {
+        boolean created = !mFile.exists() || mFile.length() < HEADER_SIZE;
+        mRandomAccessFile = new RandomAccessFile(mFile, "rw");
+        if (created) {
+            mRandomAccessFile.setLength(INITIAL_CAPACITY);
+        }
+        map();
+
+        if (created) {
+            mBuffer.putInt(0, MAGIC).put(4, VERSION).putInt(DATA_END_OFFSET, HEADER_SIZE);
+            mBuffer.force();
+        } else if (mBuffer.getInt(0) != MAGIC || (mBuffer.get(4) != VERSION && mBuffer.get(4) != LEGACY_VERSION)) {
+            throw new IOException("Unsupported store file " + mFile);
+        }
+        boolean legacy = mBuffer.get(4) == LEGACY_VERSION;
+        int recordHeaderSize = legacy ? LEGACY_RECORD_HEADER_SIZE : RECORD_HEADER_SIZE;
+
+        int dataEnd = mBuffer.getInt(DATA_END_OFFSET);
+        if (dataEnd < HEADER_SIZE || dataEnd > mBuffer.capacity()) {
+            Log.d("RNSensitiveInfo", "Invalid data end " + dataEnd + " in " + mFile);
+            dataEnd = Math.max(HEADER_SIZE, Math.min(dataEnd, mBuffer.capacity()));
+        }
+
+        ByteBuffer in = mBuffer.duplicate();
+        in.limit(dataEnd).position(HEADER_SIZE);
+        while (in.remaining() >= recordHeaderSize) {
+            int start = in.position();
+            int keyLength = in.getInt();
+            int valueLength = in.getInt();
+            int checksum = legacy ? 0 : in.getInt();
+            if (keyLength < 0 || keyLength > in.remaining() || valueLength > in.remaining() - keyLength) {
+                in.position(start);
+                break;
+            }
+            byte[] key = new byte[keyLength];
+            in.get(key);
+            int valueOffset = in.position();
+            if (!legacy) {
+                byte[] value = new byte[Math.max(valueLength, 0)];
+                in.get(value);
+                if (checksum(key, valueLength, value) != checksum) {
+                    in.position(start);
+                    break;
+                }
+            }
+
+            String keyString = new String(key, UTF_8);
+            if (valueLength < 0) {
+                retire(mIndex.remove(keyString));
+                mDeadBytes += recordHeaderSize + keyLength;
+            } else {
+                Slot slot = new Slot(valueOffset, valueLength, recordHeaderSize + keyLength + valueLength);
+                retire(mIndex.put(keyString, slot));
+                mLiveBytes += slot.recordSize;
+                in.position(valueOffset + valueLength);
+            }
+        }
+
+        // Records past the first torn one are dropped and overwritten by the next write.
+        mDataEnd = in.position();
+        if (mDataEnd != mBuffer.getInt(DATA_END_OFFSET)) {
+            Log.d("RNSensitiveInfo", "Dropped a torn tail of " + (dataEnd - mDataEnd) + " bytes from " + mFile);
+            mBuffer.putInt(DATA_END_OFFSET, mDataEnd);
+        }
+        if (legacy) {
+            compact();
+        }
+    }
+
+    private void map() throws IOException {
+        mBuffer = mRandomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, mRandomAccessFile.length());
+    }
+
+    private void ensureCapacity(int required) throws IOException {
+        int capacity = mBuffer.capacity();
+        if (required <= capacity) {
+            return;
+        }
+        while (capacity < required) {
+            capacity *= 2;
+        }
+        mRandomAccessFile.setLength(capacity);
+        map();
+    }
+
+    /**
+     * Rewrites the live entries into a fresh file and swaps it in. Buffers already handed out by
+     * {@link #getBuffer(String)} keep pointing at the previous mapping.
+     */
+    private void compact() throws IOException {
+        File temp = new File(mFile.getPath() + TEMP_SUFFIX);
+        // Recomputed rather than taken from mLiveBytes, which counts legacy records at their old size.
+        long liveBytes = 0;
+        for (Map.Entry<String, Slot> entry : mIndex.entrySet()) {
+            liveBytes += RECORD_HEADER_SIZE + entry.getKey().getBytes(UTF_8).length + entry.getValue().valueLength;
+        }
+        int capacity = INITIAL_CAPACITY;
+        while (capacity < HEADER_SIZE + liveBytes) {
+            capacity *= 2;
+        }
+
+        RandomAccessFile compacted = new RandomAccessFile(temp, "rw");
+        Map<String, Slot> slots = new HashMap<>(mIndex.size());
+        int dataEnd;
+        try {
+            compacted.setLength(capacity);
+            MappedByteBuffer out = compacted.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            out.putInt(MAGIC).put(VERSION);
+            out.position(HEADER_SIZE);
+            for (Map.Entry<String, Slot> entry : mIndex.entrySet()) {
+                byte[] keyBytes = entry.getKey().getBytes(UTF_8);
+                Slot slot = entry.getValue();
+                byte[] value = new byte[slot.valueLength];
+                ByteBuffer stored = mBuffer.duplicate();
+                stored.position(slot.valueOffset);
+                stored.get(value);
+                int valueOffset = putRecord(out, keyBytes, slot.valueLength, value);
+                slots.put(entry.getKey(), new Slot(valueOffset, slot.valueLength, RECORD_HEADER_SIZE + keyBytes.length + slot.valueLength));
+            }
+            dataEnd = out.position();
+            out.putInt(DATA_END_OFFSET, dataEnd);
+            out.force();
+        } catch (IOException e) {
+            compacted.close();
+            temp.delete();
+            throw e;
+        }
+
+        if (!temp.renameTo(mFile)) {
+            compacted.close();
+            temp.delete();
+            throw new IOException("Could not replace " + mFile);
+        }
+        mRandomAccessFile.close();
+        mRandomAccessFile = compacted;
+        map();
+        mDataEnd = dataEnd;
+        mIndex.clear();
+        mIndex.putAll(slots);
+        mLiveBytes = liveBytes;
+        mDeadBytes = 0;
+    }
+}
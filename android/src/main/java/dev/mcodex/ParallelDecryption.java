@@ -0,0 +1,72 @@
+package dev.mcodex.RNSensitiveInfo;
+
+import android.util.Log;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Decrypts a batch of stored values on a {@link ForkJoinPool}. Every worker takes its ciphers from
+ * {@link CipherPool}, so no cipher is shared between threads.
+ */
+final class ParallelDecryption {
+
+    interface Decrypter {
+        String decrypt(String encrypted) throws Exception;
+    }
+
+    // Below this many values the fork/join overhead outweighs the gain.
+    private static final int SEQUENTIAL_THRESHOLD = 16;
+
+    private ParallelDecryption() {
+    }
+
+    /**
+     * Decrypts {@code values} in place. An entry that fails to decrypt is logged and keeps its
+     * raw value, like the sequential getAllItems did.
+     */
+    static void decryptAll(ForkJoinPool pool, String[] values, Decrypter decrypter) {
+        if (values.length <= SEQUENTIAL_THRESHOLD || pool.getParallelism() <= 1) {
+            decryptRange(values, 0, values.length, decrypter);
+        } else {
+            pool.invoke(new DecryptTask(values, 0, values.length, decrypter));
+        }
+    }
+
+    private static void decryptRange(String[] values, int from, int to, Decrypter decrypter) {
+        for (int i = from; i < to; i++) {
+            try {
+                values[i] = decrypter.decrypt(values[i]);
+            } catch (Exception e) {
+                Log.d("RNSensitiveInfo", Log.getStackTraceString(e));
+            }
+        }
+    }
+
+    private static class DecryptTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final String[] mValues;
+        private final int mFrom;
+        private final int mTo;
+        private final Decrypter mDecrypter;
+
+        DecryptTask(String[] values, int from, int to, Decrypter decrypter) {
+            mValues = values;
+            mFrom = from;
+            mTo = to;
+            mDecrypter = decrypter;
+        }
+
+        @Override
+        protected void compute() {
+            if (mTo - mFrom <= SEQUENTIAL_THRESHOLD) {
+                decryptRange(mValues, mFrom, mTo, mDecrypter);
+                return;
+            }
+            int middle = (mFrom + mTo) >>> 1;
+            invokeAll(new DecryptTask(mValues, mFrom, middle, mDecrypter),
+                    new DecryptTask(mValues, middle, mTo, mDecrypter));
+        }
+    }
+}
@@ -19,13 +19,18 @@ import androidx.biometric.BiometricManager;
 import androidx.biometric.BiometricPrompt;
 import androidx.fragment.app.FragmentActivity;
 
+import com.facebook.react.bridge.LifecycleEventListener;
 import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableArray;
 import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.ReadableMapKeySetIterator;
 import com.facebook.react.bridge.UiThreadUtil;
+import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.bridge.WritableNativeArray;
 import com.facebook.react.bridge.WritableNativeMap;
 import com.facebook.react.modules.core.DeviceEventManagerModule;
 
@@ -33,19 +38,42 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.security.InvalidKeyException;
 import java.security.Key;
 import java.security.KeyPairGenerator;
 import java.security.KeyStore;
-import java.security.PrivateKey;
-import java.security.PublicKey;
+import java.security.SecureRandom;
 import java.security.UnrecoverableKeyException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.zip.DataFormatException;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
@@ -56,11 +84,12 @@ import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
 import javax.security.auth.x500.X500Principal;
 
 import dev.mcodex.RNSensitiveInfo.utils.AppConstants;
 
-public class RNSensitiveInfoModule extends ReactContextBaseJavaModule {
+public class RNSensitiveInfoModule extends ReactContextBaseJavaModule implements LifecycleEventListener {
 
     // This must have 'AndroidKeyStore' as value. Unfortunately there is no predefined constant.
     private static final String ANDROID_KEYSTORE_PROVIDER = "AndroidKeyStore";
@@ -73,14 +102,101 @@ public class RNSensitiveInfoModule extends ReactContextBaseJavaModule {
 
     private static final String AES_GCM = "AES/GCM/NoPadding";
     private static final String RSA_ECB = "RSA/ECB/PKCS1Padding";
-    private static final String DELIMITER = "]";
     private static final byte[] FIXED_IV = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 0, 1};
+    private static final int GCM_IV_SIZE = 12;
     private static final String KEY_ALIAS = "MySharedPreferenceKeyAlias";
     private static final String KEY_ALIAS_AES = "MyAesKeyAlias";
+    private static final String ENVELOPE_KEYS_PREFERENCES = "RNSensitiveInfoEnvelopeKeys";
+    private static final String DEFAULT_STORAGE_BACKEND = "sharedPreferences";
+    private static final String BLOBS_DIRECTORY = "RNSensitiveInfoBlobs";
+    private static final String EXPIRY_PREFERENCES_PREFIX = "RNSensitiveInfoExpiry_";
 
-    private FingerprintManager mFingerprintManager;
-    private KeyStore mKeyStore;
-    private CancellationSignal mCancellationSignal;
+    private static final Map<String, StorageBackend.Factory> sBackendFactories = new ConcurrentHashMap<>();
+
+    static {
+        sBackendFactories.put(DEFAULT_STORAGE_BACKEND, SharedPreferencesBackend.FACTORY);
+        sBackendFactories.put("log", LogStructuredStore.FACTORY);
+        sBackendFactories.put("mmap", MappedValueStore.FACTORY);
+    }
+
+    // A single worker keeps the calls of one JS caller in order; raise it through configure().
+    private static final int DEFAULT_EXECUTOR_THREADS = 1;
+    private static final int DEFAULT_EXECUTOR_QUEUE_SIZE = 256;
+
+    // Volatile so status calls can read them without waiting for initialization.
+    private volatile FingerprintManager mFingerprintManager;
+    private volatile KeyHandleCache mKeyCache;
+    private EnvelopeCipher mEnvelopeCipher;
+    private final SecureRandom mRandom = new SecureRandom();
+    // One per fingerprint authentication in progress, so concurrent prompts can all be cancelled.
+    private final Set<CancellationSignal> mCancellationSignals =
+            Collections.newSetFromMap(new ConcurrentHashMap<CancellationSignal, Boolean>());
+    private volatile ThreadPoolExecutor mExecutor = newExecutor(DEFAULT_EXECUTOR_THREADS, DEFAULT_EXECUTOR_QUEUE_SIZE);
+    private volatile ForkJoinPool mDecryptionPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    private final Map<String, String> mStorageBackendTypes = new HashMap<>();
+    private final Map<String, StorageBackend> mStorageBackends = new HashMap<>();
+    private final ValueCache mValueCache = new ValueCache();
+    private volatile int mCompressionThreshold;
+    private volatile int mBlobThreshold;
+    private final ExpiryIndex mExpiryIndex = new ExpiryIndex(new ExpiryIndex.Storage() {
+        @Override
+        public SharedPreferences open(String namespace) {
+            return prefs(EXPIRY_PREFERENCES_PREFIX + namespace);
+        }
+    }, new ExpiryIndex.Listener() {
+        @Override
+        public void onDeadline() {
+            try {
+                mExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        sweepExpired();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                Log.d("RNSensitiveInfo", "Postponing the expiry sweep: " + e.getMessage());
+                mExpiryIndex.retryLater();
+            }
+        }
+    });
+    private final KeyIndex mKeyIndex = new KeyIndex(new KeyIndex.Loader() {
+        @Override
+        public Set<String> load(String namespace) throws IOException {
+            Set<String> keys = new HashSet<>(storage(namespace).keys());
+            for (Map.Entry<String, String> entry : mWriteQueue.pending(namespace).entrySet()) {
+                if (entry.getValue() == null) {
+                    keys.remove(entry.getKey());
+                } else {
+                    keys.add(entry.getKey());
+                }
+            }
+            return keys;
+        }
+    });
+    private BlobStore mBlobStore;
+    private final KeyLocks mKeyLocks = new KeyLocks();
+    private final InFlightReads mInFlightReads = new InFlightReads();
+    private final EntryVersions mEntryVersions = new EntryVersions();
+    private final Map<String, Integer> mDurabilities = new ConcurrentHashMap<>();
+    private final WriteBehindQueue mWriteQueue = new WriteBehindQueue(new WriteBehindQueue.Backends() {
+        @Override
+        public StorageBackend storage(String namespace) throws IOException {
+            return RNSensitiveInfoModule.this.storage(namespace);
+        }
+    });
+
+    private final FutureTask<Void> mInitialization = new FutureTask<>(new Callable<Void>() {
+        @Override
+        public Void call() {
+            // Calls go on in whatever state loading reached; failing the task would fail every call.
+            try {
+                loadKeyStore();
+            } catch (Throwable t) {
+                Log.e("RNSensitiveInfo", "Keystore initialization failed", t);
+            }
+            return null;
+        }
+    });
 
     // Keep it true by default to maintain backwards compatibility with existing users.
     private boolean invalidateEnrollment = true;
@@ -93,18 +209,57 @@ public class RNSensitiveInfoModule extends ReactContextBaseJavaModule {
             throw new RuntimeException("Android version is too low", cause);
         }
 
+        mBlobStore = new BlobStore(new File(reactContext.getNoBackupFilesDir(), BLOBS_DIRECTORY));
+        reactContext.addLifecycleEventListener(this);
+
+        mEnvelopeCipher = new EnvelopeCipher(prefs(ENVELOPE_KEYS_PREFERENCES), new EnvelopeCipher.KeyWrapper() {
+            @Override
+            public byte[] wrap(byte[] key) throws Exception {
+                return wrapKey(key);
+            }
+
+            @Override
+            public byte[] unwrap(byte[] wrappedKey) throws Exception {
+                return unwrapKey(wrappedKey);
+            }
+
+            @Override
+            public byte[] unwrapLegacy(byte[] wrappedKey) throws Exception {
+                return decryptBytes(wrappedKey);
+            }
+        });
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            try {
+                mFingerprintManager = (FingerprintManager) reactContext.getSystemService(Context.FINGERPRINT_SERVICE);
+            } catch (Exception e) {
+                Log.d("RNSensitiveInfo", "Fingerprint not supported");
+            }
+        }
+
+        // Loading the keystore may generate keys, which can take hundreds of milliseconds, so it
+        // runs off the thread creating the React context. Calls wait for it in runOnExecutor.
+        new Thread(mInitialization, "RNSensitiveInfo-init").start();
+    }
+
+    /**
+     * Loads the keystore and makes sure the module's keys exist.
+     */
+    private void loadKeyStore() {
+        KeyStore keyStore = null;
         try {
-            mKeyStore = KeyStore.getInstance(ANDROID_KEYSTORE_PROVIDER);
-            mKeyStore.load(null);
+            keyStore = KeyStore.getInstance(ANDROID_KEYSTORE_PROVIDER);
+            keyStore.load(null);
         } catch (Exception e) {
             e.printStackTrace();
         }
 
+        mKeyCache = new KeyHandleCache(keyStore);
+
         initKeyStore();
 
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M && mFingerprintManager != null) {
             try {
-                mFingerprintManager = (FingerprintManager) reactContext.getSystemService(Context.FINGERPRINT_SERVICE);
                 initFingerprintKeyStore();
             } catch (Exception e) {
                 Log.d("RNSensitiveInfo", "Fingerprint not supported");
@@ -112,11 +267,267 @@ public class RNSensitiveInfoModule extends ReactContextBaseJavaModule {
         }
     }
 
+    /**
+     * Blocks until {@link #loadKeyStore} has finished; the fields it sets are visible afterwards.
+     */
+    private void awaitInitialization() throws Exception {
+        try {
+            mInitialization.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+    }
+
     @Override
     public String getName() {
         return "RNSensitiveInfo";
     }
 
+    @Override
+    public void onHostResume() {
+    }
+
+    @Override
+    public void onHostPause() {
+        // Do not keep decrypted values in memory while the app is in the background.
+        mValueCache.clear();
+        // The process may be killed while in the background, so persist write-behind values now.
+        try {
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    mWriteQueue.flushAll();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            mWriteQueue.flushAll();
+        }
+    }
+
+    @Override
+    public void onHostDestroy() {
+        mValueCache.clear();
+    }
+
+    @Override
+    public void onCatalystInstanceDestroy() {
+        mExecutor.shutdown();
+        mDecryptionPool.shutdown();
+        mWriteQueue.shutdown();
+        mExpiryIndex.shutdown();
+        synchronized (mStorageBackends) {
+            for (StorageBackend backend : mStorageBackends.values()) {
+                backend.close();
+            }
+            mStorageBackends.clear();
+        }
+    }
+
+    /**
+     * Registers an additional storage engine under {@code type}, so namespaces can select it with
+     * {@code configure({ storageBackends: { [sharedPreferencesName]: type } })}.
+     */
+    public static void registerStorageBackend(String type, StorageBackend.Factory factory) {
+        sBackendFactories.put(type, factory);
+    }
+
+    private static ThreadPoolExecutor newExecutor(int threads, int queueSize) {
+        final AtomicInteger count = new AtomicInteger();
+        ThreadFactory threadFactory = new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable runnable) {
+                Thread thread = new Thread(runnable, "RNSensitiveInfo-" + count.incrementAndGet());
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            }
+        };
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize), threadFactory);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Runs the storage/crypto work of a @ReactMethod on the module executor so it does not block
+     * the shared native modules thread. The promise is settled from the worker.
+     */
+    private interface Task {
+        void run() throws Exception;
+    }
+
+    private void runOnExecutor(final Promise pm, final Task task) {
+        Runnable runnable = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    awaitInitialization();
+                    task.run();
+                } catch (Exception e) {
+                    pm.reject(e);
+                }
+            }
+        };
+        while (true) {
+            ThreadPoolExecutor executor = mExecutor;
+            try {
+                executor.execute(runnable);
+                return;
+            } catch (RejectedExecutionException e) {
+                if (!executor.isShutdown()) {
+                    pm.reject(AppConstants.E_EXECUTOR_REJECTED, "RNSensitiveInfo work queue is full", e);
+                    return;
+                }
+                if (executor == mExecutor) {
+                    pm.reject(AppConstants.E_EXECUTOR_SHUTDOWN, "RNSensitiveInfo has been shut down", e);
+                    return;
+                }
+                // configure() replaced the executor after it was read; submit to the new one.
+            }
+        }
+    }
+
+    @ReactMethod
+    public void configure(ReadableMap config, Promise pm) {
+        if (config.hasKey("executorThreads") || config.hasKey("executorQueueSize")) {
+            ThreadPoolExecutor previous = mExecutor;
+            int threads = config.hasKey("executorThreads") ? config.getInt("executorThreads") : previous.getCorePoolSize();
+            int queueSize = config.hasKey("executorQueueSize")
+                    ? config.getInt("executorQueueSize")
+                    : previous.getQueue().size() + previous.getQueue().remainingCapacity();
+            if (threads < 1 || queueSize < 1) {
+                pm.reject(new IllegalArgumentException("executorThreads and executorQueueSize must be positive"));
+                return;
+            }
+            mExecutor = newExecutor(threads, queueSize);
+            // Already queued work still runs on the previous executor.
+            previous.shutdown();
+        }
+        if (config.hasKey("decryptionParallelism")) {
+            int parallelism = config.getInt("decryptionParallelism");
+            if (parallelism < 1) {
+                pm.reject(new IllegalArgumentException("decryptionParallelism must be positive"));
+                return;
+            }
+            ForkJoinPool previous = mDecryptionPool;
+            mDecryptionPool = new ForkJoinPool(parallelism);
+            previous.shutdown();
+        }
+        if (config.hasKey("valueCache")) {
+            ReadableMap cache = config.getMap("valueCache");
+            int maxEntries = cache.hasKey("maxEntries") ? cache.getInt("maxEntries") : 0;
+            long ttlMillis = cache.hasKey("ttlMs") ? (long) cache.getDouble("ttlMs") : 0;
+            if (maxEntries < 0 || ttlMillis < 0) {
+                pm.reject(new IllegalArgumentException("valueCache maxEntries and ttlMs must not be negative"));
+                return;
+            }
+            mValueCache.configure(maxEntries, ttlMillis);
+        }
+        if (config.hasKey("durability")) {
+            ReadableMap durabilities = config.getMap("durability");
+            ReadableMapKeySetIterator iterator = durabilities.keySetIterator();
+            while (iterator.hasNextKey()) {
+                String name = iterator.nextKey();
+                try {
+                    mDurabilities.put(name, WriteBehindQueue.parseDurability(durabilities.getString(name)));
+                } catch (IllegalArgumentException e) {
+                    pm.reject(e);
+                    return;
+                }
+            }
+        }
+        if (config.hasKey("writeBehindFlushIntervalMs")) {
+            long flushIntervalMillis = (long) config.getDouble("writeBehindFlushIntervalMs");
+            if (flushIntervalMillis < 0) {
+                pm.reject(new IllegalArgumentException("writeBehindFlushIntervalMs must not be negative"));
+                return;
+            }
+            mWriteQueue.setFlushInterval(flushIntervalMillis);
+        }
+        if (config.hasKey("writeCoalesceWindowMs")) {
+            long coalesceWindowMillis = (long) config.getDouble("writeCoalesceWindowMs");
+            if (coalesceWindowMillis < 0) {
+                pm.reject(new IllegalArgumentException("writeCoalesceWindowMs must not be negative"));
+                return;
+            }
+            mWriteQueue.setCoalesceWindow(coalesceWindowMillis);
+        }
+        if (config.hasKey("compressionThresholdBytes")) {
+            int compressionThreshold = config.getInt("compressionThresholdBytes");
+            if (compressionThreshold < 0) {
+                pm.reject(new IllegalArgumentException("compressionThresholdBytes must not be negative"));
+                return;
+            }
+            mCompressionThreshold = compressionThreshold;
+        }
+        if (config.hasKey("blobThresholdBytes")) {
+            int blobThreshold = config.getInt("blobThresholdBytes");
+            if (blobThreshold < 0) {
+                pm.reject(new IllegalArgumentException("blobThresholdBytes must not be negative"));
+                return;
+            }
+            mBlobThreshold = blobThreshold;
+        }
+        if (config.hasKey("storageBackends")) {
+            // Every type is checked before any namespace is switched.
+            final Map<String, String> backends = new HashMap<>();
+            ReadableMap types = config.getMap("storageBackends");
+            ReadableMapKeySetIterator iterator = types.keySetIterator();
+            while (iterator.hasNextKey()) {
+                String name = iterator.nextKey();
+                String type = types.getString(name);
+                if (!sBackendFactories.containsKey(type)) {
+                    pm.reject(new IllegalArgumentException("Unknown storage backend " + type));
+                    return;
+                }
+                backends.put(name, type);
+            }
+            runOnExecutor(pm, new Task() {
+                @Override
+                public void run() throws Exception {
+                    switchBackends(backends);
+                    pm.resolve(null);
+                }
+            });
+            return;
+        }
+        pm.resolve(null);
+    }
+
+    /**
+     * Points namespaces at the given backend types. Pending writes are flushed to the backends
+     * they were made against, and every key is locked so no call is still using a backend that
+     * gets closed. Switching the backend of a namespace does not migrate the values already stored.
+     */
+    private void switchBackends(Map<String, String> backends) {
+        List<Lock> locks = mKeyLocks.acquireAll();
+        try {
+            mWriteQueue.flushAll();
+            for (Map.Entry<String, String> entry : backends.entrySet()) {
+                String name = entry.getKey();
+                boolean switched;
+                synchronized (mStorageBackends) {
+                    switched = !entry.getValue().equals(mStorageBackendTypes.put(name, entry.getValue()));
+                    if (switched) {
+                        StorageBackend previous = mStorageBackends.remove(name);
+                        if (previous != null) {
+                            previous.close();
+                        }
+                    }
+                }
+                // Outside the lock, so no other monitor is ever taken while holding it.
+                if (switched) {
+                    mKeyIndex.invalidate(name);
+                    mEntryVersions.bumpAll(name);
+                    mInFlightReads.detachNamespace(name);
+                    mValueCache.invalidateNamespace(name);
+                }
+            }
+        } finally {
+            KeyLocks.release(locks);
+        }
+    }
+
     /**
      * Checks whether the device supports Biometric authentication and if the user has
      * enrolled at least one credential.
@@ -143,11 +554,16 @@ public class RNSensitiveInfoModule extends ReactContextBaseJavaModule {
     @ReactMethod
     public void setInvalidatedByBiometricEnrollment(final boolean invalidatedByBiometricEnrollment, final Promise pm) {
         this.invalidateEnrollment = invalidatedByBiometricEnrollment;
-        try {
-            prepareKey();
-        } catch (Exception e) {
-            pm.reject(e);
-        }
+        runOnExecutor(pm, new Task() {
+            @Override
+            public void run() throws Exception {
+                try {
+                    prepareKey();
+                } catch (Exception e) {
+                    pm.reject(e);
+                }
+            }
+        });
     }
 
     // @ReactMethod
@@ -165,8 +581,9 @@ public class RNSensitiveInfoModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void hasEnrolledFingerprints(final Promise pm) {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M && mFingerprintManager != null) {
-            pm.resolve(mFingerprintManager.hasEnrolledFingerprints());
+        FingerprintManager fingerprintManager = mFingerprintManager;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M && fingerprintManager != null) {
+            pm.resolve(fingerprintManager.hasEnrolledFingerprints());
         } else {
             pm.resolve(false);
         }
@@ -178,51 +595,177 @@ public class RNSensitiveInfoModule extends ReactContextBaseJavaModule {
     }
 
     @ReactMethod
-    public void getItem(String key, ReadableMap options, Promise pm) {
+    public void getItem(final String key, final ReadableMap options, final Promise pm) {
+        // Concurrent reads of one key share a single decryption or biometric prompt.
+        boolean touchID = options.hasKey("touchID") && options.getBoolean("touchID");
+        final Promise read = mInFlightReads.join(sharedPreferences(options), key, touchID, pm);
+        if (read == null) {
+            return;
+        }
+        runOnExecutor(read, new Task() {
+            @Override
+            public void run() throws Exception {
+                doGetItem(key, options, read);
+            }
+        });
+    }
 
+    private void doGetItem(String key, ReadableMap options, Promise pm) throws Exception {
         String name = sharedPreferences(options);
 
-        String value = prefs(name).getString(key, null);
-
-        if (value != null && options.hasKey("touchID") && options.getBoolean("touchID")) {
-            boolean showModal = options.hasKey("showModal") && options.getBoolean("showModal");
-            HashMap strings = options.hasKey("strings") ? options.getMap("strings").toHashMap() : new HashMap();
-
-            decryptWithAes(value, showModal, strings, pm, null);
-        } else if (value != null) {
+        if (!options.hasKey("touchID") || !options.getBoolean("touchID")) {
+            Lock lock = mKeyLocks.acquireRead(name, key);
             try {
-                pm.resolve(decrypt(value));
+                pm.resolve(getDecrypted(key, name, null));
             } catch (Exception e) {
                 pm.reject(e);
+            } finally {
+                lock.unlock();
             }
+            return;
+        }
+
+        ByteBuffer stored = getStoredBuffer(key, name);
+
+        if (stored == null) {
+            pm.resolve(null);
+        } else if (ValueFormat.scheme(stored) != ValueFormat.SCHEME_BIOMETRIC) {
+            pm.reject("DecryptionFailed", "DecryptionFailed");
+        } else {
+            boolean showModal = options.hasKey("showModal") && options.getBoolean("showModal");
+            HashMap strings = options.hasKey("strings") ? options.getMap("strings").toHashMap() : new HashMap();
+
+            decryptWithAes(ValueFormat.biometricIv(stored), ValueFormat.biometricCiphertext(stored), showModal, strings, pm, null);
+        }
+    }
+
+    /**
+     * Reads and decrypts a non-biometric value, going through the value cache when it is enabled.
+     * Binary backends are decrypted straight from their buffer.
+     */
+    private String getDecrypted(String key, String name, Cipher keystoreCipher) throws Exception {
+        if (mExpiryIndex.isExpired(name, key)) {
+            return null;
+        }
+        String cached = mValueCache.get(name, key);
+        if (cached != null) {
+            return cached;
+        }
+
+        long generation = mValueCache.generation();
+        Object pending = mWriteQueue.lookup(name, key);
+        StorageBackend backend = storage(name);
+        String value;
+        if (pending != WriteBehindQueue.ABSENT) {
+            value = pending != null ? decrypt((String) pending, keystoreCipher) : null;
+        } else if (backend instanceof BinaryStorageBackend) {
+            ByteBuffer stored = ((BinaryStorageBackend) backend).getBuffer(key);
+            value = stored != null ? decrypt(stored, keystoreCipher) : null;
         } else {
-            pm.resolve(value);
+            String stored = backend.get(key);
+            value = stored != null ? decrypt(stored, keystoreCipher) : null;
         }
+        mValueCache.put(name, key, value, generation);
+        return value;
     }
 
     @ReactMethod
-    public void hasItem(String key, ReadableMap options, Promise pm) {
+    public void getItems(final ReadableArray keys, final ReadableMap options, final Promise pm) {
+        runOnExecutor(pm, new Task() {
+            @Override
+            public void run() throws Exception {
+                doGetItems(keys, options, pm);
+            }
+        });
+    }
+
+    /**
+     * Reads several keys in one bridge call. The keystore key and cipher are resolved and
+     * initialised once and shared by every value in the batch.
+     */
+    private void doGetItems(ReadableArray keys, ReadableMap options, Promise pm) {
+        if (options.hasKey("touchID") && options.getBoolean("touchID")) {
+            pm.reject(AppConstants.E_BATCH_NOT_SUPPORTED, "getItems does not support touchID items");
+            return;
+        }
+
         String name = sharedPreferences(options);
+        WritableMap resultData = new WritableNativeMap();
+
+        try {
+            Cipher cipher = initKeystoreCipher(Cipher.DECRYPT_MODE);
+            for (int i = 0; i < keys.size(); i++) {
+                String key = keys.getString(i);
+                String value = getDecrypted(key, name, cipher);
+                if (value == null) {
+                    resultData.putNull(key);
+                } else {
+                    resultData.putString(key, value);
+                }
+            }
+            pm.resolve(resultData);
+        } catch (Exception e) {
+            pm.reject(e);
+        }
+    }
+
+    @ReactMethod
+    public void hasItem(final String key, final ReadableMap options, final Promise pm) {
+        runOnExecutor(pm, new Task() {
+            @Override
+            public void run() throws Exception {
+                doHasItem(key, options, pm);
+            }
+        });
+    }
 
-        String value = prefs(name).getString(key, null);
+    private void doHasItem(String key, ReadableMap options, Promise pm) throws Exception {
+        String name = sharedPreferences(options);
 
-        pm.resolve(value != null ? true : false);
+        Lock lock = mKeyLocks.acquireRead(name, key);
+        try {
+            pm.resolve(currentVersion(name, key) != EntryVersions.ABSENT);
+        } finally {
+            lock.unlock();
+        }
     }
 
     @ReactMethod
-    public void setItem(String key, String value, ReadableMap options, Promise pm) {
+    public void setItem(final String key, final String value, final ReadableMap options, final Promise pm) {
+        runOnExecutor(pm, new Task() {
+            @Override
+            public void run() throws Exception {
+                doSetItem(key, value, options, pm);
+            }
+        });
+    }
 
+    private void doSetItem(String key, String value, ReadableMap options, Promise pm) {
         String name = sharedPreferences(options);
 
         if (options.hasKey("touchID") && options.getBoolean("touchID")) {
+            if (options.hasKey("expiresAt") || options.hasKey("ttlMs")) {
+                pm.reject(AppConstants.E_EXPIRY_NOT_SUPPORTED, "touchID items do not support expiresAt or ttlMs");
+                return;
+            }
             boolean showModal = options.hasKey("showModal") && options.getBoolean("showModal");
             HashMap strings = options.hasKey("strings") ? options.getMap("strings").toHashMap() : new HashMap();
 
-            putExtraWithAES(key, value, prefs(name), showModal, strings, pm, null);
+            putExtraWithAES(key, value, name, showModal, strings, pm, null);
         } else {
             try {
-                putExtra(key, encrypt(value), prefs(name));
-                pm.resolve(value);
+                // Options are checked before a side file can be written for the value.
+                boolean envelope = options.hasKey("envelopeEncryption") && options.getBoolean("envelopeEncryption");
+                int durability = durability(options, name);
+                long expiresAt = expiresAt(options);
+                String encrypted = encryptValue(value, envelope, name);
+                try {
+                    writeExtras(name, Collections.singletonMap(key, encrypted), Collections.<String>emptyList(),
+                            durability, expiresAt, pm, value);
+                } catch (Exception e) {
+                    deleteBlobs(Collections.singletonList(encrypted));
+                    throw e;
+                }
             } catch (Exception e) {
                 e.printStackTrace();
                 pm.reject(e);
@@ -232,45 +775,364 @@ public class RNSensitiveInfoModule extends ReactContextBaseJavaModule {
 
 
     @ReactMethod
-    public void deleteItem(String key, ReadableMap options, Promise pm) {
+    public void getItemVersion(final String key, final ReadableMap options, final Promise pm) {
+        runOnExecutor(pm, new Task() {
+            @Override
+            public void run() throws Exception {
+                String name = sharedPreferences(options);
+                Lock lock = mKeyLocks.acquireRead(name, key);
+                try {
+                    pm.resolve((double) currentVersion(name, key));
+                } finally {
+                    lock.unlock();
+                }
+            }
+        });
+    }
+
+    @ReactMethod
+    public void compareAndSetItem(final String key, final double expectedVersion, final String value,
+                                  final ReadableMap options, final Promise pm) {
+        runOnExecutor(pm, new Task() {
+            @Override
+            public void run() throws Exception {
+                doCompareAndSetItem(key, (long) expectedVersion, value, options, pm);
+            }
+        });
+    }
+
+    /**
+     * Writes {@code value} only if the entry still has {@code expectedVersion} (0 when it must not
+     * exist yet) and resolves with whether it was written and the resulting version. The value is
+     * encrypted before the key is locked, so concurrent writers only serialize on the check and the
+     * write itself.
+     */
+    private void doCompareAndSetItem(final String key, long expectedVersion, String value, ReadableMap options,
+                                     Promise pm) throws Exception {
+        if (options.hasKey("touchID") && options.getBoolean("touchID")) {
+            pm.reject(AppConstants.E_COMPARE_AND_SET_NOT_SUPPORTED, "compareAndSetItem does not support touchID items");
+            return;
+        }
+
+        final String name = sharedPreferences(options);
+        boolean envelope = options.hasKey("envelopeEncryption") && options.getBoolean("envelopeEncryption");
+        int durability = durability(options, name);
+        long expiresAt = expiresAt(options);
+        String encrypted = encryptValue(value, envelope, name);
+
+        List<Lock> locks = mKeyLocks.acquire(name, Collections.singletonList(key));
+        try {
+            long version = currentVersion(name, key);
+            if (version != expectedVersion) {
+                deleteBlobs(Collections.singletonList(encrypted));
+                pm.resolve(compareAndSetResult(false, version));
+                return;
+            }
+            writeExtras(name, Collections.singletonMap(key, encrypted), Collections.<String>emptyList(),
+                    durability, expiresAt, pm, new Result() {
+                        @Override
+                        public Object get() {
+                            return compareAndSetResult(true, mEntryVersions.get(name, key));
+                        }
+                    });
+        } catch (Exception e) {
+            deleteBlobs(Collections.singletonList(encrypted));
+            throw e;
+        } finally {
+            KeyLocks.release(locks);
+        }
+    }
+
+    private static WritableMap compareAndSetResult(boolean written, long version) {
+        WritableMap result = new WritableNativeMap();
+        result.putBoolean("written", written);
+        result.putDouble("version", version);
+        return result;
+    }
+
+    @ReactMethod
+    public void setItems(final ReadableMap values, final ReadableMap options, final Promise pm) {
+        runOnExecutor(pm, new Task() {
+            @Override
+            public void run() throws Exception {
+                doSetItems(values, options, pm);
+            }
+        });
+    }
+
+    /**
+     * Encrypts every value first and then writes them all with a single editor commit, so either
+     * the whole batch is stored or nothing is.
+     */
+    private void doSetItems(ReadableMap values, ReadableMap options, Promise pm) {
+        if (options.hasKey("touchID") && options.getBoolean("touchID")) {
+            pm.reject(AppConstants.E_BATCH_NOT_SUPPORTED, "setItems does not support touchID items");
+            return;
+        }
 
         String name = sharedPreferences(options);
+        boolean envelope = options.hasKey("envelopeEncryption") && options.getBoolean("envelopeEncryption");
 
-        SharedPreferences.Editor editor = prefs(name).edit();
+        Map<String, String> encrypted = new HashMap<>();
+        try {
+            int durability = durability(options, name);
+            long expiresAt = expiresAt(options);
+            ReadableMapKeySetIterator iterator = values.keySetIterator();
+            while (iterator.hasNextKey()) {
+                String key = iterator.nextKey();
+                String value = values.getString(key);
+                encrypted.put(key, encryptValue(value, envelope, name));
+            }
+            writeExtras(name, encrypted, Collections.<String>emptyList(), durability, expiresAt, pm, null);
+        } catch (Exception e) {
+            // Side files already written for the batch were never committed.
+            deleteBlobs(encrypted.values());
+            pm.reject(e);
+        }
+    }
 
-        boolean wasRemoved = editor.remove(key).commit();
-        if(!wasRemoved){
-            pm.reject(new Exception("Could not remove " + key + " from Shared Preferences"));
-        } else {
-            pm.resolve(null);
+    @ReactMethod
+    public void deleteItem(final String key, final ReadableMap options, final Promise pm) {
+        runOnExecutor(pm, new Task() {
+            @Override
+            public void run() throws Exception {
+                doDeleteItem(key, options, pm);
+            }
+        });
+    }
+
+    private void doDeleteItem(String key, ReadableMap options, Promise pm) throws Exception {
+        String name = sharedPreferences(options);
+
+        try {
+            writeExtras(name, Collections.<String, String>emptyMap(), Collections.singletonList(key),
+                    durability(options, name), 0, pm, null);
+        } catch (Exception e) {
+            pm.reject(e);
         }
     }
 
 
     @ReactMethod
-    public void getAllItems(ReadableMap options, Promise pm) {
+    public void getAllItems(final ReadableMap options, final Promise pm) {
+        runOnExecutor(pm, new Task() {
+            @Override
+            public void run() throws Exception {
+                doGetAllItems(options, pm);
+            }
+        });
+    }
 
+    private void doGetAllItems(ReadableMap options, Promise pm) throws Exception {
         String name = sharedPreferences(options);
 
-        Map<String, ?> allEntries = prefs(name).getAll();
-        WritableMap resultData = new WritableNativeMap();
+        Map<String, ?> allEntries = getAllExtras(name);
+        String[] keys = new String[allEntries.size()];
+        String[] values = new String[allEntries.size()];
 
+        int i = 0;
         for (Map.Entry<String, ?> entry : allEntries.entrySet()) {
-            String value = entry.getValue().toString();
-            try {
-                value = decrypt(value);
-            } catch (Exception e) {
-                Log.d("RNSensitiveInfo", Log.getStackTraceString(e));
+            keys[i] = entry.getKey();
+            values[i] = entry.getValue().toString();
+            i++;
+        }
+
+        pm.resolve(decryptEntries(keys, values));
+    }
+
+    @ReactMethod
+    public void getAllItemsPage(final String cursor, final int limit, final ReadableMap options, final Promise pm) {
+        runOnExecutor(pm, new Task() {
+            @Override
+            public void run() throws Exception {
+                doGetAllItemsPage(cursor, limit, options, pm);
+            }
+        });
+    }
+
+    /**
+     * Returns at most {@code limit} entries in key order, starting after {@code cursor} (or from
+     * the first key when it is null). Only the entries of the page are decrypted; the returned
+     * {@code nextCursor} is null once the store is exhausted.
+     */
+    private void doGetAllItemsPage(String cursor, int limit, ReadableMap options, Promise pm) throws Exception {
+        if (limit < 1) {
+            pm.reject(new IllegalArgumentException("limit must be positive"));
+            return;
+        }
+
+        String name = sharedPreferences(options);
+
+        // One key more than the page tells whether another page follows.
+        List<String> pageKeys = mKeyIndex.keysAfter(name, cursor, limit + 1);
+        boolean hasMore = pageKeys.size() > limit;
+        if (hasMore) {
+            pageKeys = pageKeys.subList(0, limit);
+        }
+
+        WritableMap page = new WritableNativeMap();
+        page.putMap("items", decryptStoredEntries(pageKeys, name));
+        if (hasMore) {
+            page.putString("nextCursor", pageKeys.get(limit - 1));
+        } else {
+            page.putNull("nextCursor");
+        }
+        pm.resolve(page);
+    }
+
+    /**
+     * Reads the stored values of {@code keys} and decrypts them with {@link #decryptEntries}.
+     * Keys deleted in the meantime are left out.
+     */
+    private WritableMap decryptStoredEntries(List<String> keys, String name) throws IOException {
+        List<String> foundKeys = new ArrayList<>(keys.size());
+        List<String> values = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            String value = getStoredText(key, name);
+            if (value != null) {
+                foundKeys.add(key);
+                values.add(value);
+            }
+        }
+        return decryptEntries(foundKeys.toArray(new String[0]), values.toArray(new String[0]));
+    }
+
+    @ReactMethod
+    public void getItemsByPrefix(final String prefix, final ReadableMap options, final Promise pm) {
+        runOnExecutor(pm, new Task() {
+            @Override
+            public void run() throws Exception {
+                String name = sharedPreferences(options);
+                pm.resolve(decryptStoredEntries(mKeyIndex.keysWithPrefix(name, prefix), name));
+            }
+        });
+    }
+
+    @ReactMethod
+    public void deleteItemsByPrefix(final String prefix, final ReadableMap options, final Promise pm) {
+        runOnExecutor(pm, new Task() {
+            @Override
+            public void run() throws Exception {
+                doDeleteItemsByPrefix(prefix, options, pm);
+            }
+        });
+    }
+
+    /**
+     * Deletes every key starting with {@code prefix} in one batch and resolves with their number.
+     */
+    private void doDeleteItemsByPrefix(String prefix, ReadableMap options, Promise pm) throws Exception {
+        String name = sharedPreferences(options);
+        List<String> keys = mKeyIndex.keysWithPrefix(name, prefix);
+        if (keys.isEmpty()) {
+            pm.resolve(0);
+            return;
+        }
+        writeExtras(name, Collections.<String, String>emptyMap(), keys, durability(options, name), 0, pm, keys.size());
+    }
+
+    @ReactMethod
+    public void clearStore(final ReadableMap options, final Promise pm) {
+        runOnExecutor(pm, new Task() {
+            @Override
+            public void run() throws Exception {
+                doClearStore(options, pm);
+            }
+        });
+    }
+
+    /**
+     * Removes every entry of the namespace with one backend clear instead of a delete per key, and
+     * drops the side files and decrypted values that belonged to it. With {@code clearKeyCache}
+     * the cached keystore key handles are released as well.
+     */
+    private void doClearStore(ReadableMap options, Promise pm) throws Exception {
+        String name = sharedPreferences(options);
+
+        List<Lock> locks = mKeyLocks.acquireAll();
+        try {
+            mWriteQueue.clear(name);
+            mExpiryIndex.clear(name);
+            mKeyIndex.invalidate(name);
+            mEntryVersions.bumpAll(name);
+            mInFlightReads.detachNamespace(name);
+            mValueCache.invalidateNamespace(name);
+            if (mBlobStore.hasBlobs(name)) {
+                mBlobStore.deleteNamespace(name);
+            }
+        } finally {
+            KeyLocks.release(locks);
+        }
+        if (options.hasKey("clearKeyCache") && options.getBoolean("clearKeyCache")) {
+            mKeyCache.invalidateAll();
+        }
+        pm.resolve(null);
+    }
+
+    @ReactMethod
+    public void getAllKeys(final ReadableMap options, final Promise pm) {
+        runOnExecutor(pm, new Task() {
+            @Override
+            public void run() throws Exception {
+                String name = sharedPreferences(options);
+                WritableArray keys = new WritableNativeArray();
+                for (String key : mKeyIndex.keys(name)) {
+                    if (!mExpiryIndex.isExpired(name, key)) {
+                        keys.pushString(key);
+                    }
+                }
+                pm.resolve(keys);
+            }
+        });
+    }
+
+    /**
+     * Decrypts {@code values} on the decryption pool and pairs them with {@code keys}. Entries
+     * that fail to decrypt keep their raw value.
+     */
+    private WritableMap decryptEntries(String[] keys, String[] values) {
+        ParallelDecryption.decryptAll(mDecryptionPool, values, new ParallelDecryption.Decrypter() {
+            @Override
+            public String decrypt(String encrypted) throws Exception {
+                return RNSensitiveInfoModule.this.decrypt(encrypted);
             }
-            resultData.putString(entry.getKey(), value);
+        });
+
+        WritableMap resultData = new WritableNativeMap();
+        for (int i = 0; i < keys.length; i++) {
+            resultData.putString(keys[i], values[i]);
         }
-        pm.resolve(resultData);
+        return resultData;
+    }
+
+    @ReactMethod
+    public void flush(final ReadableMap options, final Promise pm) {
+        runOnExecutor(pm, new Task() {
+            @Override
+            public void run() throws Exception {
+                mWriteQueue.flush(sharedPreferences(options));
+                pm.resolve(null);
+            }
+        });
+    }
+
+    @ReactMethod
+    public void getKeyCacheStats(final Promise pm) {
+        // Counters only; answered directly so a busy or full work queue cannot delay or reject it.
+        KeyHandleCache keyCache = mKeyCache;
+        WritableMap stats = new WritableNativeMap();
+        stats.putDouble("hits", keyCache != null ? keyCache.getHits() : 0);
+        stats.putDouble("misses", keyCache != null ? keyCache.getMisses() : 0);
+        pm.resolve(stats);
     }
 
     @ReactMethod
     public void cancelFingerprintAuth() {
-        if (mCancellationSignal != null && !mCancellationSignal.isCanceled()) {
-            mCancellationSignal.cancel();
+        for (CancellationSignal signal : mCancellationSignals) {
+            mCancellationSignals.remove(signal);
+            if (!signal.isCanceled()) {
+                signal.cancel();
+            }
         }
     }
 
@@ -288,11 +1150,360 @@ public class RNSensitiveInfoModule extends ReactContextBaseJavaModule {
     }
 
 
-    private void putExtra(String key, String value, SharedPreferences mSharedPreferences) throws Exception {
-        SharedPreferences.Editor editor = mSharedPreferences.edit();
-        boolean wasWritten = editor.putString(key, value).commit();
-        if(!wasWritten){
-            throw new Exception("Could not write " + key + " to Shared Preferences");
+    private StorageBackend storage(String name) throws IOException {
+        synchronized (mStorageBackends) {
+            StorageBackend backend = mStorageBackends.get(name);
+            if (backend == null) {
+                String type = mStorageBackendTypes.get(name);
+                StorageBackend.Factory factory = sBackendFactories.get(type != null ? type : DEFAULT_STORAGE_BACKEND);
+                backend = factory.create(getReactApplicationContext(), name);
+                mStorageBackends.put(name, backend);
+            }
+            return backend;
+        }
+    }
+
+    /**
+     * Returns the durability level of a write: the {@code durability} option of the call, else the
+     * level configured for the namespace, else commit.
+     */
+    private int durability(ReadableMap options, String name) {
+        if (options.hasKey("durability")) {
+            return WriteBehindQueue.parseDurability(options.getString("durability"));
+        }
+        return durability(name);
+    }
+
+    private int durability(String name) {
+        Integer durability = mDurabilities.get(name);
+        return durability != null ? durability : WriteBehindQueue.DURABILITY_COMMIT;
+    }
+
+    /**
+     * Returns the stored (encrypted) text of {@code key}, including writes still pending.
+     */
+    private String getStoredText(String key, String name) throws IOException {
+        if (mExpiryIndex.isExpired(name, key)) {
+            return null;
+        }
+        return readStoredText(key, name);
+    }
+
+    /**
+     * Returns the version of {@code key}, or {@link EntryVersions#ABSENT} when it has no value.
+     */
+    private long currentVersion(String name, String key) throws IOException {
+        if (mExpiryIndex.isExpired(name, key)) {
+            return EntryVersions.ABSENT;
+        }
+        Object pending = mWriteQueue.lookup(name, key);
+        boolean exists = pending != WriteBehindQueue.ABSENT ? pending != null : storage(name).contains(key);
+        return exists ? mEntryVersions.get(name, key) : EntryVersions.ABSENT;
+    }
+
+    /**
+     * Like {@link #getStoredText}, but also returns entries that expired and were not swept yet.
+     */
+    private String readStoredText(String key, String name) throws IOException {
+        Object pending = mWriteQueue.lookup(name, key);
+        if (pending != WriteBehindQueue.ABSENT) {
+            return (String) pending;
+        }
+        return storage(name).get(key);
+    }
+
+    /**
+     * Returns the stored value of {@code key} in {@link ValueFormat}, straight from binary backends
+     * and converted from the text form otherwise.
+     */
+    private ByteBuffer getStoredBuffer(String key, String name) throws IOException {
+        if (mExpiryIndex.isExpired(name, key)) {
+            return null;
+        }
+        Object pending = mWriteQueue.lookup(name, key);
+        StorageBackend backend = storage(name);
+        String text;
+        if (pending != WriteBehindQueue.ABSENT) {
+            text = (String) pending;
+        } else if (backend instanceof BinaryStorageBackend) {
+            return ((BinaryStorageBackend) backend).getBuffer(key);
+        } else {
+            text = backend.get(key);
+        }
+        return text != null ? ByteBuffer.wrap(ValueFormat.fromText(text)) : null;
+    }
+
+    private Map<String, String> getAllExtras(String name) throws IOException {
+        Map<String, String> entries = new HashMap<>(storage(name).getAll());
+        for (Map.Entry<String, String> entry : mWriteQueue.pending(name).entrySet()) {
+            if (entry.getValue() == null) {
+                entries.remove(entry.getKey());
+            } else {
+                entries.put(entry.getKey(), entry.getValue());
+            }
+        }
+        Iterator<String> keys = entries.keySet().iterator();
+        while (keys.hasNext()) {
+            if (mExpiryIndex.isExpired(name, keys.next())) {
+                keys.remove();
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Produces the value a write resolves with, once the write is done.
+     */
+    private interface Result {
+        Object get();
+    }
+
+    private void writeExtras(String name, Map<String, String> puts, Collection<String> deletes,
+                             int durability, long expiresAt, Promise pm, final Object result) throws IOException {
+        writeExtras(name, puts, deletes, durability, expiresAt, pm, new Result() {
+            @Override
+            public Object get() {
+                return result;
+            }
+        });
+    }
+
+    /**
+     * Writes encrypted values and deletes as one batch and settles {@code pm} with {@code result}.
+     * While a coalescing window is configured, commit writes are queued and the promise is only
+     * resolved once the coalesced batch is on disk. The keys are locked for the duration of the
+     * write, so it cannot interleave with a compare-and-set of one of them.
+     */
+    private void writeExtras(final String name, final Map<String, String> puts, final Collection<String> deletes,
+                             int durability, long expiresAt, final Promise pm, final Result result) throws IOException {
+        List<String> keys = new ArrayList<>(puts.keySet());
+        keys.addAll(deletes);
+        List<Lock> locks = mKeyLocks.acquire(name, keys);
+        try {
+            writeLockedExtras(name, puts, deletes, durability, expiresAt, pm, result);
+        } finally {
+            KeyLocks.release(locks);
+        }
+    }
+
+    private void writeLockedExtras(final String name, final Map<String, String> puts, final Collection<String> deletes,
+                                   int durability, long expiresAt, final Promise pm, final Result result) throws IOException {
+        // A deadline is stored before its value, so a value never outlives its deadline after a
+        // crash, and put back if the write fails, so the old value does not get the new deadline.
+        // Keys written without one lose their old deadline once the write has landed.
+        final List<String> unexpiring = new ArrayList<>(deletes);
+        final Map<String, Long> previousDeadlines;
+        if (expiresAt > 0) {
+            previousDeadlines = mExpiryIndex.deadlines(name, puts.keySet());
+            mExpiryIndex.set(name, puts.keySet(), expiresAt);
+        } else {
+            previousDeadlines = Collections.emptyMap();
+            unexpiring.addAll(puts.keySet());
+        }
+
+        boolean written = false;
+        try {
+            writeExtrasAfterDeadlines(name, puts, deletes, durability, unexpiring, previousDeadlines, pm, result);
+            written = true;
+        } finally {
+            if (!written) {
+                restoreExpiry(name, previousDeadlines);
+            }
+        }
+    }
+
+    /**
+     * Writes the batch once its deadlines are stored. The caller restores the deadlines if this
+     * throws; a coalesced write that fails later restores them itself.
+     */
+    private void writeExtrasAfterDeadlines(final String name, final Map<String, String> puts, final Collection<String> deletes,
+                                           int durability, final List<String> unexpiring,
+                                           final Map<String, Long> previousDeadlines, final Promise pm,
+                                           final Result result) throws IOException {
+        List<String> obsoleteBlobs = storedBlobs(name, puts.keySet(), deletes);
+        if (!obsoleteBlobs.isEmpty() || containsBlob(puts.values())) {
+            commitExtras(name, puts, deletes, obsoleteBlobs);
+            forgetExpiry(name, unexpiring);
+            pm.resolve(result.get());
+            return;
+        }
+
+        if (durability == WriteBehindQueue.DURABILITY_COMMIT && mWriteQueue.isCoalescing()) {
+            mWriteQueue.writeCoalesced(name, puts, deletes, new WriteBehindQueue.Callback() {
+                @Override
+                public void onPersisted() {
+                    // The write was visible, and the keys invalidated, when it was queued.
+                    forgetExpiry(name, unexpiring);
+                    pm.resolve(result.get());
+                }
+
+                @Override
+                public void onFailed(IOException e) {
+                    // The keys fall back to their persisted values, which readers may not have seen.
+                    invalidateExtras(name, puts.keySet(), deletes);
+                    // The dropped writes were already applied to the index.
+                    mKeyIndex.invalidate(name);
+                    restoreExpiry(name, previousDeadlines);
+                    pm.reject(e);
+                }
+            });
+            invalidateExtras(name, puts.keySet(), deletes);
+            return;
+        }
+
+        mWriteQueue.write(name, puts, deletes, durability);
+        invalidateExtras(name, puts.keySet(), deletes);
+        forgetExpiry(name, unexpiring);
+        pm.resolve(result.get());
+    }
+
+    /**
+     * Commits a batch that creates or replaces side files. Side files are only created or removed
+     * together with a committed pointer.
+     */
+    private void commitExtras(String name, Map<String, String> puts, Collection<String> deletes,
+                              List<String> obsoleteBlobs) throws IOException {
+        try {
+            mWriteQueue.write(name, puts, deletes, WriteBehindQueue.DURABILITY_COMMIT);
+        } catch (IOException e) {
+            deleteBlobs(puts.values());
+            throw e;
+        }
+        invalidateExtras(name, puts.keySet(), deletes);
+        for (String pointer : obsoleteBlobs) {
+            mBlobStore.delete(pointer);
+        }
+    }
+
+    /**
+     * Deletes the side files of encrypted values that were never committed.
+     */
+    private void deleteBlobs(Collection<String> encrypted) {
+        for (String value : encrypted) {
+            if (BlobStore.isPointer(value)) {
+                mBlobStore.delete(value);
+            }
+        }
+    }
+
+    private void restoreExpiry(String name, Map<String, Long> previousDeadlines) {
+        if (previousDeadlines.isEmpty()) {
+            return;
+        }
+        try {
+            mExpiryIndex.restore(name, previousDeadlines);
+        } catch (IOException e) {
+            Log.d("RNSensitiveInfo", "Could not restore the expiry of " + previousDeadlines.keySet() + ": " + e.getMessage());
+        }
+    }
+
+    private void forgetExpiry(String name, Collection<String> keys) {
+        try {
+            mExpiryIndex.remove(name, keys);
+        } catch (IOException e) {
+            // The entries keep their previous deadline and expire early, never late.
+            Log.d("RNSensitiveInfo", e.getMessage());
+        }
+    }
+
+    /**
+     * Deletes the expired entries of every loaded namespace, one batch per namespace.
+     */
+    private void sweepExpired() {
+        boolean failed = false;
+        for (Map.Entry<String, List<String>> entry : mExpiryIndex.expired().entrySet()) {
+            String name = entry.getKey();
+            List<Lock> locks = mKeyLocks.acquire(name, entry.getValue());
+            try {
+                // Skip the keys rewritten since the deadlines were collected.
+                List<String> keys = new ArrayList<>();
+                for (String key : entry.getValue()) {
+                    if (mExpiryIndex.isExpired(name, key)) {
+                        keys.add(key);
+                    }
+                }
+                commitExtras(name, Collections.<String, String>emptyMap(), keys,
+                        storedBlobs(name, Collections.<String>emptyList(), keys));
+                mExpiryIndex.remove(name, keys);
+            } catch (IOException e) {
+                // Retried with a backoff; until then the entries read as missing.
+                Log.d("RNSensitiveInfo", "Could not delete expired entries of " + name + ": " + e.getMessage());
+                failed = true;
+            } finally {
+                KeyLocks.release(locks);
+            }
+        }
+        if (failed) {
+            mExpiryIndex.retryLater();
+        } else {
+            mExpiryIndex.scheduleNext();
+        }
+    }
+
+    /**
+     * Returns the expiry deadline of a write in wall-clock milliseconds, from the {@code expiresAt}
+     * or {@code ttlMs} option, or 0 when the entry does not expire.
+     *
+     * @throws IllegalArgumentException if the deadline is not a finite time in the future
+     */
+    private static long expiresAt(ReadableMap options) {
+        long now = System.currentTimeMillis();
+        if (options.hasKey("expiresAt")) {
+            double expiresAt = options.getDouble("expiresAt");
+            if (Double.isNaN(expiresAt) || Double.isInfinite(expiresAt) || expiresAt <= now) {
+                throw new IllegalArgumentException("expiresAt must be a time in the future, got " + expiresAt);
+            }
+            return (long) expiresAt;
+        }
+        if (options.hasKey("ttlMs")) {
+            double ttl = options.getDouble("ttlMs");
+            if (Double.isNaN(ttl) || Double.isInfinite(ttl) || ttl <= 0) {
+                throw new IllegalArgumentException("ttlMs must be a positive number, got " + ttl);
+            }
+            return now + (long) ttl;
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the blob pointers currently stored under {@code puts} and {@code deletes}.
+     */
+    private List<String> storedBlobs(String name, Collection<String> puts, Collection<String> deletes) throws IOException {
+        List<String> pointers = new ArrayList<>();
+        if (!mBlobStore.hasBlobs(name)) {
+            return pointers;
+        }
+        for (Collection<String> keys : Arrays.asList(puts, deletes)) {
+            for (String key : keys) {
+                String stored = readStoredText(key, name);
+                if (stored != null && BlobStore.isPointer(stored)) {
+                    pointers.add(stored);
+                }
+            }
+        }
+        return pointers;
+    }
+
+    private static boolean containsBlob(Collection<String> values) {
+        for (String value : values) {
+            if (BlobStore.isPointer(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void invalidateExtras(String name, Collection<String> puts, Collection<String> deletes) {
+        mKeyIndex.update(name, puts, deletes);
+        List<String> written = new ArrayList<>(puts);
+        written.addAll(deletes);
+        mEntryVersions.bump(name, written);
+        mInFlightReads.detach(name, written);
+        for (String key : puts) {
+            mValueCache.invalidate(name, key);
+        }
+        for (String key : deletes) {
+            mValueCache.invalidate(name, key);
         }
     }
 
@@ -302,33 +1513,36 @@ public class RNSensitiveInfoModule extends ReactContextBaseJavaModule {
      */
     private void initKeyStore() {
         try {
-            if (!mKeyStore.containsAlias(KEY_ALIAS)) {
-                if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-                    KeyGenerator keyGenerator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES, ANDROID_KEYSTORE_PROVIDER);
-                    keyGenerator.init(
-                            new KeyGenParameterSpec.Builder(KEY_ALIAS,
-                                    KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
-                                    .setBlockModes(KeyProperties.BLOCK_MODE_GCM)
-                                    .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_NONE)
-                                    .setRandomizedEncryptionRequired(false)
-                                    .build());
-                    keyGenerator.generateKey();
-                } else {
-                    Calendar notBefore = Calendar.getInstance();
-                    Calendar notAfter = Calendar.getInstance();
-                    notAfter.add(Calendar.YEAR, 10);
-                    KeyPairGeneratorSpec spec = new KeyPairGeneratorSpec.Builder(getReactApplicationContext())
-                    .setAlias(KEY_ALIAS)
-                    .setSubject(new X500Principal("CN=" + KEY_ALIAS))
-                    .setSerialNumber(BigInteger.valueOf(1337))
-                    .setStartDate(notBefore.getTime())
-                    .setEndDate(notAfter.getTime())
-                    .build();
-                    KeyPairGenerator kpGenerator = KeyPairGenerator.getInstance("RSA", ANDROID_KEYSTORE_PROVIDER);
-                    kpGenerator.initialize(spec);
-                    kpGenerator.generateKeyPair();
+            mKeyCache.ensure(KEY_ALIAS, new KeyHandleCache.Generator() {
+                @Override
+                public void generate() throws Exception {
+                    if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                        KeyGenerator keyGenerator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES, ANDROID_KEYSTORE_PROVIDER);
+                        keyGenerator.init(
+                                new KeyGenParameterSpec.Builder(KEY_ALIAS,
+                                        KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
+                                        .setBlockModes(KeyProperties.BLOCK_MODE_GCM)
+                                        .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_NONE)
+                                        .setRandomizedEncryptionRequired(false)
+                                        .build());
+                        keyGenerator.generateKey();
+                    } else {
+                        Calendar notBefore = Calendar.getInstance();
+                        Calendar notAfter = Calendar.getInstance();
+                        notAfter.add(Calendar.YEAR, 10);
+                        KeyPairGeneratorSpec spec = new KeyPairGeneratorSpec.Builder(getReactApplicationContext())
+                        .setAlias(KEY_ALIAS)
+                        .setSubject(new X500Principal("CN=" + KEY_ALIAS))
+                        .setSerialNumber(BigInteger.valueOf(1337))
+                        .setStartDate(notBefore.getTime())
+                        .setEndDate(notAfter.getTime())
+                        .build();
+                        KeyPairGenerator kpGenerator = KeyPairGenerator.getInstance("RSA", ANDROID_KEYSTORE_PROVIDER);
+                        kpGenerator.initialize(spec);
+                        kpGenerator.generateKeyPair();
+                    }
                 }
-            }
+            });
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -375,50 +1589,59 @@ public class RNSensitiveInfoModule extends ReactContextBaseJavaModule {
      */
     private void initFingerprintKeyStore() {
         try {
-            // Check if a generated key exists under the KEY_ALIAS_AES .
-            if (!mKeyStore.containsAlias(KEY_ALIAS_AES)) {
-                prepareKey();
-            }
+            // Only generate a key when none exists under the KEY_ALIAS_AES.
+            mKeyCache.ensure(KEY_ALIAS_AES, fingerprintKeyGenerator());
         } catch (Exception e) {
             //
         }
     }
 
+    /**
+     * Replaces the key under {@code KEY_ALIAS_AES}, e.g. after it was invalidated.
+     */
     private void prepareKey() throws Exception {
+        mKeyCache.replace(KEY_ALIAS_AES, fingerprintKeyGenerator());
+    }
 
-        KeyGenerator keyGenerator = KeyGenerator.getInstance(
-                KeyProperties.KEY_ALGORITHM_AES, ANDROID_KEYSTORE_PROVIDER);
-
-        KeyGenParameterSpec.Builder builder = null;
-        builder = new KeyGenParameterSpec.Builder(
-                KEY_ALIAS_AES,
-                KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT);
-
-        builder.setBlockModes(KeyProperties.BLOCK_MODE_CBC)
-                .setKeySize(256)
-                .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_PKCS7)
-                // forces user authentication with fingerprint
-                .setUserAuthenticationRequired(true);
+    private KeyHandleCache.Generator fingerprintKeyGenerator() {
+        return new KeyHandleCache.Generator() {
+            @Override
+            public void generate() throws Exception {
+                KeyGenerator keyGenerator = KeyGenerator.getInstance(
+                        KeyProperties.KEY_ALGORITHM_AES, ANDROID_KEYSTORE_PROVIDER);
+
+                KeyGenParameterSpec.Builder builder = null;
+                builder = new KeyGenParameterSpec.Builder(
+                        KEY_ALIAS_AES,
+                        KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT);
+
+                builder.setBlockModes(KeyProperties.BLOCK_MODE_CBC)
+                        .setKeySize(256)
+                        .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_PKCS7)
+                        // forces user authentication with fingerprint
+                        .setUserAuthenticationRequired(true);
+
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+                    try {
+                        builder.setInvalidatedByBiometricEnrollment(invalidateEnrollment);
+                    } catch (Exception e) {
+                        Log.d("RNSensitiveInfo", "Error setting setInvalidatedByBiometricEnrollment: " + e.getMessage());
+                    }
+                }
 
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
-            try {
-                builder.setInvalidatedByBiometricEnrollment(invalidateEnrollment);
-            } catch (Exception e) {
-                Log.d("RNSensitiveInfo", "Error setting setInvalidatedByBiometricEnrollment: " + e.getMessage());
+                keyGenerator.init(builder.build());
+                keyGenerator.generateKey();
             }
-        }
-
-        keyGenerator.init(builder.build());
-        keyGenerator.generateKey();
+        };
     }
 
-    private void putExtraWithAES(final String key, final String value, final SharedPreferences mSharedPreferences, final boolean showModal, final HashMap strings, final Promise pm, Cipher cipher) {
+    private void putExtraWithAES(final String key, final String value, final String name, final boolean showModal, final HashMap strings, final Promise pm, Cipher cipher) {
 
         if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.M && hasSetupBiometricCredential()) {
             try {
                 if (cipher == null) {
-                    SecretKey secretKey = (SecretKey) mKeyStore.getKey(KEY_ALIAS_AES, null);
-                    cipher = Cipher.getInstance(AES_DEFAULT_TRANSFORMATION);
+                    SecretKey secretKey = mKeyCache.getSecretKey(KEY_ALIAS_AES);
+                    cipher = CipherPool.acquire(AES_DEFAULT_TRANSFORMATION);
                     cipher.init(Cipher.ENCRYPT_MODE, secretKey);
 
                     // Retrieve information about the SecretKey from the KeyStore.
@@ -434,7 +1657,7 @@ public class RNSensitiveInfoModule extends ReactContextBaseJavaModule {
                                 @Override
                                 public void onAuthenticationSucceeded(@NonNull BiometricPrompt.AuthenticationResult result) {
                                     if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-                                        putExtraWithAES(key, value, mSharedPreferences, true, strings, pm, result.getCryptoObject().getCipher());
+                                        putExtraWithAES(key, value, name, true, strings, pm, result.getCryptoObject().getCipher());
                                     }
                                 }
 
@@ -452,8 +1675,9 @@ public class RNSensitiveInfoModule extends ReactContextBaseJavaModule {
 
                             showDialog(strings, new BiometricPrompt.CryptoObject(cipher), new PutExtraWithAESCallback());
                         } else {
-                            mCancellationSignal = new CancellationSignal();
-                            mFingerprintManager.authenticate(new FingerprintManager.CryptoObject(cipher), mCancellationSignal,
+                            final CancellationSignal cancellationSignal = new CancellationSignal();
+                            mCancellationSignals.add(cancellationSignal);
+                            mFingerprintManager.authenticate(new FingerprintManager.CryptoObject(cipher), cancellationSignal,
                                     0, new FingerprintManager.AuthenticationCallback() {
 
                                         @Override
@@ -466,6 +1690,7 @@ public class RNSensitiveInfoModule extends ReactContextBaseJavaModule {
                                         @Override
                                         public void onAuthenticationError(int errorCode, CharSequence errString) {
                                             super.onAuthenticationError(errorCode, errString);
+                                            mCancellationSignals.remove(cancellationSignal);
                                             pm.reject(String.valueOf(errorCode), errString.toString());
                                         }
 
@@ -479,8 +1704,9 @@ public class RNSensitiveInfoModule extends ReactContextBaseJavaModule {
                                         @Override
                                         public void onAuthenticationSucceeded(FingerprintManager.AuthenticationResult result) {
                                             super.onAuthenticationSucceeded(result);
+                                            mCancellationSignals.remove(cancellationSignal);
                                             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-                                                putExtraWithAES(key, value, mSharedPreferences, false, strings, pm, result.getCryptoObject().getCipher());
+                                                putExtraWithAES(key, value, name, false, strings, pm, result.getCryptoObject().getCipher());
                                             }
                                         }
                                     }, null);
@@ -489,24 +1715,20 @@ public class RNSensitiveInfoModule extends ReactContextBaseJavaModule {
                     return;
                 }
 
-                byte[] encryptedBytes = cipher.doFinal(value.getBytes());
-
-                // Encode the initialization vector (IV) and encryptedBytes to Base64.
-                String base64IV = Base64.encodeToString(cipher.getIV(), Base64.DEFAULT);
-                String base64Cipher = Base64.encodeToString(encryptedBytes, Base64.DEFAULT);
-
-                String result = base64IV + DELIMITER + base64Cipher;
+                byte[] encryptedBytes = cipher.doFinal(toPlaintext(value));
+                // Read the IV before the cipher goes back to the pool and another operation re-inits it.
+                String result = ValueFormat.toText(ByteBuffer.wrap(ValueFormat.encodeBiometric(cipher.getIV(), encryptedBytes)));
+                CipherPool.release(AES_DEFAULT_TRANSFORMATION, cipher);
 
                 try {
-                    putExtra(key, result, mSharedPreferences);
-                    pm.resolve(value);
+                    writeExtras(name, Collections.singletonMap(key, result), Collections.<String>emptyList(),
+                            durability(name), 0, pm, value);
                 } catch(Exception e){
                     pm.reject(e);
                 }
 
             } catch (InvalidKeyException | UnrecoverableKeyException e) {
                 try {
-                    mKeyStore.deleteEntry(KEY_ALIAS_AES);
                     prepareKey();
                 } catch (Exception keyResetError) {
                     pm.reject(keyResetError);
@@ -515,7 +1737,6 @@ public class RNSensitiveInfoModule extends ReactContextBaseJavaModule {
             } catch (IllegalBlockSizeException e){
                 if(e.getCause() != null && e.getCause().getMessage().contains("Key user not authenticated")) {
                     try {
-                        mKeyStore.deleteEntry(KEY_ALIAS_AES);
                         prepareKey();
                         pm.reject(AppConstants.KM_ERROR_KEY_USER_NOT_AUTHENTICATED, e.getCause().getMessage());
                     } catch (Exception keyResetError) {
@@ -534,23 +1755,15 @@ public class RNSensitiveInfoModule extends ReactContextBaseJavaModule {
         }
     }
 
-    private void decryptWithAes(final String encrypted, final boolean showModal, final HashMap strings, final Promise pm, Cipher cipher) {
+    private void decryptWithAes(final byte[] iv, final byte[] cipherBytes, final boolean showModal, final HashMap strings, final Promise pm, Cipher cipher) {
 
         if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.M
                 && hasSetupBiometricCredential()) {
 
-            String[] inputs = encrypted.split(DELIMITER);
-            if (inputs.length < 2) {
-                pm.reject("DecryptionFailed", "DecryptionFailed");
-            }
-
             try {
-                byte[] iv = Base64.decode(inputs[0], Base64.DEFAULT);
-                byte[] cipherBytes = Base64.decode(inputs[1], Base64.DEFAULT);
-
                 if (cipher == null) {
-                    SecretKey secretKey = (SecretKey) mKeyStore.getKey(KEY_ALIAS_AES, null);
-                    cipher = Cipher.getInstance(AES_DEFAULT_TRANSFORMATION);
+                    SecretKey secretKey = mKeyCache.getSecretKey(KEY_ALIAS_AES);
+                    cipher = CipherPool.acquire(AES_DEFAULT_TRANSFORMATION);
                     cipher.init(Cipher.DECRYPT_MODE, secretKey, new IvParameterSpec(iv));
 
                     SecretKeyFactory factory = SecretKeyFactory.getInstance(
@@ -565,7 +1778,7 @@ public class RNSensitiveInfoModule extends ReactContextBaseJavaModule {
                                 @Override
                                 public void onAuthenticationSucceeded(@NonNull BiometricPrompt.AuthenticationResult result) {
                                     if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-                                        decryptWithAes(encrypted, true, strings, pm, result.getCryptoObject().getCipher());
+                                        decryptWithAes(iv, cipherBytes, true, strings, pm, result.getCryptoObject().getCipher());
                                     }
                                 }
 
@@ -583,8 +1796,9 @@ public class RNSensitiveInfoModule extends ReactContextBaseJavaModule {
 
                             showDialog(strings, new BiometricPrompt.CryptoObject(cipher), new DecryptWithAesCallback());
                         } else {
-                            mCancellationSignal = new CancellationSignal();
-                            mFingerprintManager.authenticate(new FingerprintManager.CryptoObject(cipher), mCancellationSignal,
+                            final CancellationSignal cancellationSignal = new CancellationSignal();
+                            mCancellationSignals.add(cancellationSignal);
+                            mFingerprintManager.authenticate(new FingerprintManager.CryptoObject(cipher), cancellationSignal,
                                     0, new FingerprintManager.AuthenticationCallback() {
 
                                         @Override
@@ -597,6 +1811,7 @@ public class RNSensitiveInfoModule extends ReactContextBaseJavaModule {
                                         @Override
                                         public void onAuthenticationError(int errorCode, CharSequence errString) {
                                             super.onAuthenticationError(errorCode, errString);
+                                            mCancellationSignals.remove(cancellationSignal);
                                             pm.reject(String.valueOf(errorCode), errString.toString());
                                         }
 
@@ -610,8 +1825,9 @@ public class RNSensitiveInfoModule extends ReactContextBaseJavaModule {
                                         @Override
                                         public void onAuthenticationSucceeded(FingerprintManager.AuthenticationResult result) {
                                             super.onAuthenticationSucceeded(result);
+                                            mCancellationSignals.remove(cancellationSignal);
                                             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-                                                decryptWithAes(encrypted, false, strings, pm, result.getCryptoObject().getCipher());
+                                                decryptWithAes(iv, cipherBytes, false, strings, pm, result.getCryptoObject().getCipher());
                                             }
                                         }
                                     }, null);
@@ -620,10 +1836,10 @@ public class RNSensitiveInfoModule extends ReactContextBaseJavaModule {
                     return;
                 }
                 byte[] decryptedBytes = cipher.doFinal(cipherBytes);
-                pm.resolve(new String(decryptedBytes));
+                CipherPool.release(AES_DEFAULT_TRANSFORMATION, cipher);
+                pm.resolve(fromPlaintext(decryptedBytes));
             } catch (InvalidKeyException | UnrecoverableKeyException e) {
                 try {
-                    mKeyStore.deleteEntry(KEY_ALIAS_AES);
                     prepareKey();
                 } catch (Exception keyResetError) {
                     pm.reject(keyResetError);
@@ -632,7 +1848,6 @@ public class RNSensitiveInfoModule extends ReactContextBaseJavaModule {
             } catch (IllegalBlockSizeException e){
                 if(e.getCause() != null && e.getCause().getMessage().contains("Key user not authenticated")) {
                     try {
-                        mKeyStore.deleteEntry(KEY_ALIAS_AES);
                         prepareKey();
                         pm.reject(AppConstants.KM_ERROR_KEY_USER_NOT_AUTHENTICATED, e.getCause().getMessage());
                     } catch (Exception keyResetError) {
@@ -655,18 +1870,93 @@ public class RNSensitiveInfoModule extends ReactContextBaseJavaModule {
     }
 
     public String encrypt(String input) throws Exception {
-        byte[] bytes = input.getBytes();
+        awaitInitialization();
+        return Base64.encodeToString(encryptBytes(toPlaintext(input)), Base64.NO_WRAP);
+    }
+
+    /**
+     * Encrypts a non-biometric value for storage. Values that reach the blob threshold are written
+     * to a side file and only their pointer is returned. The file is encrypted under the envelope
+     * data key with envelope encryption, and otherwise under its own key wrapped by the keystore
+     * key, so the value keeps the protection its caller asked for.
+     */
+    private String encryptValue(String value, boolean envelope, String name) throws Exception {
+        byte[] plaintext = toPlaintext(value);
+        if (mBlobThreshold > 0 && plaintext.length >= mBlobThreshold) {
+            if (envelope) {
+                return mBlobStore.write(name, plaintext, mEnvelopeCipher.dataKey(), null);
+            }
+            SecretKey key = mBlobStore.newKey();
+            return mBlobStore.write(name, plaintext, key, wrapKey(key.getEncoded()));
+        }
+        if (envelope) {
+            return mEnvelopeCipher.encrypt(plaintext);
+        }
+        return Base64.encodeToString(encryptBytes(plaintext), Base64.NO_WRAP);
+    }
+
+    /**
+     * Returns the bytes to encrypt for {@code value}, compressed when it reaches the configured
+     * compression threshold.
+     */
+    private byte[] toPlaintext(String value) {
+        return Compression.compress(value.getBytes(), mCompressionThreshold);
+    }
+
+    private static String fromPlaintext(byte[] plaintext) throws DataFormatException {
+        return new String(Compression.decompress(plaintext));
+    }
+
+    /**
+     * Returns the pooled cipher for the {@code KEY_ALIAS} key, initialised for {@code mode}. A
+     * decrypting cipher resets itself after doFinal, so it can be reused for several values.
+     */
+    private Cipher initKeystoreCipher(int mode) throws Exception {
         Cipher c;
 
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-            Key secretKey = ((KeyStore.SecretKeyEntry) mKeyStore.getEntry(KEY_ALIAS, null)).getSecretKey();
-            c = Cipher.getInstance(AES_GCM);
-            c.init(Cipher.ENCRYPT_MODE, secretKey, new GCMParameterSpec(128, FIXED_IV));
+            Key secretKey = mKeyCache.getSecretKey(KEY_ALIAS);
+            c = CipherPool.obtain(AES_GCM);
+            c.init(mode, secretKey, new GCMParameterSpec(128, FIXED_IV));
         } else {
-            PublicKey publicKey = ((KeyStore.PrivateKeyEntry)mKeyStore.getEntry(KEY_ALIAS, null)).getCertificate().getPublicKey();
-            c = Cipher.getInstance(RSA_ECB);
-            c.init(Cipher.ENCRYPT_MODE, publicKey);
+            Key rsaKey = mode == Cipher.ENCRYPT_MODE ? mKeyCache.getPublicKey(KEY_ALIAS) : mKeyCache.getPrivateKey(KEY_ALIAS);
+            c = CipherPool.obtain(RSA_ECB);
+            c.init(mode, rsaKey);
+        }
+        return c;
+    }
+
+    /**
+     * Wraps a key with the keystore key. Stored values share the keystore key's fixed IV, so a key
+     * wrapped the same way could be recovered from any known value; on the AES path each wrap
+     * uses a fresh IV, which is kept in front of the wrapped key. RSA padding is randomized.
+     */
+    private byte[] wrapKey(byte[] key) throws Exception {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            return encryptBytes(key);
         }
+        byte[] iv = new byte[GCM_IV_SIZE];
+        mRandom.nextBytes(iv);
+        Cipher c = CipherPool.obtain(AES_GCM);
+        c.init(Cipher.ENCRYPT_MODE, mKeyCache.getSecretKey(KEY_ALIAS), new GCMParameterSpec(128, iv));
+        byte[] ciphertext = c.doFinal(key);
+        byte[] wrapped = Arrays.copyOf(iv, iv.length + ciphertext.length);
+        System.arraycopy(ciphertext, 0, wrapped, iv.length, ciphertext.length);
+        return wrapped;
+    }
+
+    private byte[] unwrapKey(byte[] wrapped) throws Exception {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            return decryptBytes(wrapped);
+        }
+        Cipher c = CipherPool.obtain(AES_GCM);
+        c.init(Cipher.DECRYPT_MODE, mKeyCache.getSecretKey(KEY_ALIAS),
+                new GCMParameterSpec(128, wrapped, 0, GCM_IV_SIZE));
+        return c.doFinal(wrapped, GCM_IV_SIZE, wrapped.length - GCM_IV_SIZE);
+    }
+
+    private byte[] encryptBytes(byte[] bytes) throws Exception {
+        Cipher c = initKeystoreCipher(Cipher.ENCRYPT_MODE);
 
         int cipherTextSize = 0;
         ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
@@ -685,30 +1975,67 @@ public class RNSensitiveInfoModule extends ReactContextBaseJavaModule {
         cipherTextSize += ciphertextChunk.length;
         dataStream.write(ciphertextChunk);
 
-        String encryptedBase64Encoded = Base64.encodeToString(byteStream.toByteArray(), Base64.NO_WRAP);
-        return encryptedBase64Encoded;
+        return byteStream.toByteArray();
     }
 
 
     public String decrypt(String encrypted) throws Exception {
+        awaitInitialization();
+        return decrypt(encrypted, null);
+    }
+
+    /**
+     * Decrypts a stored value. {@code keystoreCipher} may be a cipher already initialised through
+     * {@link #initKeystoreCipher(int)}; when null a pooled one is initialised on demand.
+     */
+    private String decrypt(String encrypted, Cipher keystoreCipher) throws Exception {
         if (encrypted == null) {
             Exception cause = new RuntimeException("Invalid argument at decrypt function");
             throw new RuntimeException("encrypted argument can't be null", cause);
         }
 
-        Cipher c;
+        if (EnvelopeCipher.isEnvelope(encrypted)) {
+            return fromPlaintext(mEnvelopeCipher.decrypt(encrypted));
+        }
+        if (BlobStore.isPointer(encrypted)) {
+            byte[] wrappedKey = BlobStore.wrappedKey(encrypted);
+            SecretKey key = wrappedKey != null
+                    ? new SecretKeySpec(unwrapKey(wrappedKey), "AES")
+                    : mEnvelopeCipher.dataKey();
+            return fromPlaintext(mBlobStore.read(encrypted, key));
+        }
 
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-            Key secretKey = ((KeyStore.SecretKeyEntry) mKeyStore.getEntry(KEY_ALIAS, null)).getSecretKey();
-            c = Cipher.getInstance(AES_GCM);
-            c.init(Cipher.DECRYPT_MODE, secretKey, new GCMParameterSpec(128, FIXED_IV));
-        } else {
-            PrivateKey privateKey = ((KeyStore.PrivateKeyEntry)mKeyStore.getEntry(KEY_ALIAS, null)).getPrivateKey();
-            c = Cipher.getInstance(RSA_ECB);
-            c.init(Cipher.DECRYPT_MODE, privateKey);
+        if (keystoreCipher == null) {
+            keystoreCipher = initKeystoreCipher(Cipher.DECRYPT_MODE);
         }
+        return fromPlaintext(decryptBytes(Base64.decode(encrypted, Base64.NO_WRAP), keystoreCipher));
+    }
+
+    /**
+     * Decrypts a value in {@link ValueFormat} without first turning it into Base64 text. The
+     * ciphertext is read straight from {@code stored}, which may be a memory-mapped region.
+     */
+    private String decrypt(ByteBuffer stored, Cipher keystoreCipher) throws Exception {
+        switch (ValueFormat.scheme(stored)) {
+            case ValueFormat.SCHEME_KEYSTORE:
+                ByteBuffer ciphertext = ValueFormat.payload(stored);
+                Cipher c = keystoreCipher != null ? keystoreCipher : initKeystoreCipher(Cipher.DECRYPT_MODE);
+                byte[] plaintext = new byte[c.getOutputSize(ciphertext.remaining())];
+                int written = c.doFinal(ciphertext, ByteBuffer.wrap(plaintext));
+                return fromPlaintext(written == plaintext.length ? plaintext : Arrays.copyOf(plaintext, written));
+            case ValueFormat.SCHEME_ENVELOPE:
+                return fromPlaintext(mEnvelopeCipher.decrypt(ValueFormat.payload(stored)));
+            default:
+                return decrypt(ValueFormat.toText(stored), keystoreCipher);
+        }
+    }
+
+    private byte[] decryptBytes(byte[] bytes) throws Exception {
+        return decryptBytes(bytes, initKeystoreCipher(Cipher.DECRYPT_MODE));
+    }
+
+    private byte[] decryptBytes(byte[] bytes, Cipher c) throws Exception {
 
-        byte[] bytes = Base64.decode(encrypted, Base64.NO_WRAP);
         ByteArrayInputStream byteStream = new ByteArrayInputStream(bytes);
         DataInputStream dataStream = new DataInputStream(byteStream);
 
@@ -721,7 +2048,6 @@ public class RNSensitiveInfoModule extends ReactContextBaseJavaModule {
             outputStream.write(buffer, 0, len);
         }
 
-        byte[] decodedBytes = outputStream.toByteArray();
-        return new String(decodedBytes);
+        return outputStream.toByteArray();
     }
 }
@@ -0,0 +1,104 @@
+package dev.mcodex.RNSensitiveInfo;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The default backend, storing every namespace in its own SharedPreferences file.
+ */
+class SharedPreferencesBackend implements StorageBackend {
+
+    static final StorageBackend.Factory FACTORY = new StorageBackend.Factory() {
+        @Override
+        public StorageBackend create(Context context, String name) {
+            return new SharedPreferencesBackend(context.getSharedPreferences(name, Context.MODE_PRIVATE));
+        }
+    };
+
+    private final SharedPreferences mSharedPreferences;
+
+    SharedPreferencesBackend(SharedPreferences sharedPreferences) {
+        mSharedPreferences = sharedPreferences;
+    }
+
+    @Override
+    public String get(String key) {
+        return mSharedPreferences.getString(key, null);
+    }
+
+    @Override
+    public boolean contains(String key) {
+        return mSharedPreferences.contains(key);
+    }
+
+    @Override
+    public Set<String> keys() {
+        return mSharedPreferences.getAll().keySet();
+    }
+
+    @Override
+    public Map<String, String> getAll() {
+        Map<String, ?> entries = mSharedPreferences.getAll();
+        Map<String, String> values = new HashMap<>(entries.size());
+        for (Map.Entry<String, ?> entry : entries.entrySet()) {
+            values.put(entry.getKey(), entry.getValue().toString());
+        }
+        return values;
+    }
+
+    @Override
+    public void write(Map<String, String> puts, Collection<String> deletes) throws IOException {
+        boolean wasWritten = edit(puts, deletes).commit();
+        if(!wasWritten){
+            if (puts.isEmpty()) {
+                throw new IOException("Could not remove " + describe(deletes) + " from Shared Preferences");
+            }
+            throw new IOException("Could not write " + describe(puts.keySet()) + " to Shared Preferences");
+        }
+    }
+
+    @Override
+    public void apply(Map<String, String> puts, Collection<String> deletes) {
+        edit(puts, deletes).apply();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        // A commit is queued behind every pending apply() and waits for them to reach the disk.
+        if (!mSharedPreferences.edit().commit()) {
+            throw new IOException("Could not flush Shared Preferences");
+        }
+    }
+
+    @Override
+    public void clear() throws IOException {
+        if (!mSharedPreferences.edit().clear().commit()) {
+            throw new IOException("Could not clear Shared Preferences");
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private SharedPreferences.Editor edit(Map<String, String> puts, Collection<String> deletes) {
+        SharedPreferences.Editor editor = mSharedPreferences.edit();
+        for (String key : deletes) {
+            editor.remove(key);
+        }
+        for (Map.Entry<String, String> entry : puts.entrySet()) {
+            editor.putString(entry.getKey(), entry.getValue());
+        }
+        return editor;
+    }
+
+    private static String describe(Collection<String> keys) {
+        return keys.size() == 1 ? keys.iterator().next() : keys.size() + " items";
+    }
+}
@@ -0,0 +1,54 @@
+package dev.mcodex.RNSensitiveInfo;
+
+import android.content.Context;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Persistence for the encrypted values of one namespace ({@code sharedPreferencesName}). The
+ * module does all crypto itself, so a backend only ever sees encrypted values.
+ *
+ * Additional engines can be plugged in with
+ * {@link RNSensitiveInfoModule#registerStorageBackend(String, Factory)} and selected per
+ * namespace through {@code configure({ storageBackends })}.
+ */
+public interface StorageBackend {
+
+    interface Factory {
+        StorageBackend create(Context context, String name) throws IOException;
+    }
+
+    String get(String key) throws IOException;
+
+    boolean contains(String key) throws IOException;
+
+    Set<String> keys() throws IOException;
+
+    Map<String, String> getAll() throws IOException;
+
+    /**
+     * Applies all puts and deletes atomically: either every change is persisted or none is.
+     */
+    void write(Map<String, String> puts, Collection<String> deletes) throws IOException;
+
+    /**
+     * Like {@link #write}, but the changes only have to be visible to readers when this returns;
+     * persisting them may be deferred until {@link #flush()}.
+     */
+    void apply(Map<String, String> puts, Collection<String> deletes) throws IOException;
+
+    /**
+     * Returns once every change made through {@link #apply} is durable.
+     */
+    void flush() throws IOException;
+
+    /**
+     * Durably removes every entry, without rewriting them one by one.
+     */
+    void clear() throws IOException;
+
+    void close();
+}
@@ -0,0 +1,115 @@
+package dev.mcodex.RNSensitiveInfo;
+
+import android.os.SystemClock;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Opt-in LRU cache of decrypted values keyed by (namespace, key), bounded in size and with a
+ * per-entry TTL. The cache's own char arrays are cleared when an entry is evicted, expires or is
+ * invalidated, but values are handed out and read back as Strings, so copies of the plaintext
+ * remain on the heap until they are collected.
+ */
+class ValueCache {
+
+    private static class Entry {
+        final char[] value;
+        final long expiresAt;
+
+        Entry(char[] value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            if (size() > mMaxEntries) {
+                Arrays.fill(eldest.getValue().value, '\0');
+                return true;
+            }
+            return false;
+        }
+    };
+
+    private int mMaxEntries;
+    private long mTtlMillis;
+    // Bumped by every invalidation so a read that raced with a write cannot cache a stale value.
+    private long mGeneration;
+
+    synchronized void configure(int maxEntries, long ttlMillis) {
+        mMaxEntries = maxEntries;
+        mTtlMillis = ttlMillis;
+        clear();
+    }
+
+    /**
+     * Returns the generation to pass to {@link #put} for a value read from storage now.
+     */
+    synchronized long generation() {
+        return mGeneration;
+    }
+
+    synchronized String get(String namespace, String key) {
+        String cacheKey = cacheKey(namespace, key);
+        Entry entry = mEntries.get(cacheKey);
+        if (entry == null) {
+            return null;
+        }
+        if (SystemClock.elapsedRealtime() >= entry.expiresAt) {
+            mEntries.remove(cacheKey);
+            Arrays.fill(entry.value, '\0');
+            return null;
+        }
+        return new String(entry.value);
+    }
+
+    synchronized void put(String namespace, String key, String value, long generation) {
+        if (mMaxEntries <= 0 || value == null || generation != mGeneration) {
+            return;
+        }
+        // Without a TTL an entry lives until it is evicted or invalidated.
+        long expiresAt = mTtlMillis > 0 ? SystemClock.elapsedRealtime() + mTtlMillis : Long.MAX_VALUE;
+        Entry previous = mEntries.put(cacheKey(namespace, key), new Entry(value.toCharArray(), expiresAt));
+        if (previous != null) {
+            Arrays.fill(previous.value, '\0');
+        }
+    }
+
+    synchronized void invalidate(String namespace, String key) {
+        mGeneration++;
+        Entry entry = mEntries.remove(cacheKey(namespace, key));
+        if (entry != null) {
+            Arrays.fill(entry.value, '\0');
+        }
+    }
+
+    synchronized void invalidateNamespace(String namespace) {
+        mGeneration++;
+        String prefix = namespace + '\0';
+        Iterator<Map.Entry<String, Entry>> iterator = mEntries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Entry> entry = iterator.next();
+            if (entry.getKey().startsWith(prefix)) {
+                Arrays.fill(entry.getValue().value, '\0');
+                iterator.remove();
+            }
+        }
+    }
+
+    synchronized void clear() {
+        mGeneration++;
+        for (Entry entry : mEntries.values()) {
+            Arrays.fill(entry.value, '\0');
+        }
+        mEntries.clear();
+    }
+
+    private static String cacheKey(String namespace, String key) {
+        return namespace + '\0' + key;
+    }
+}
@@ -0,0 +1,147 @@
+package dev.mcodex.RNSensitiveInfo;
+
+import android.util.Base64;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Binary representation of a stored (already encrypted) value, used by backends that keep raw
+ * bytes instead of strings. Keystore, envelope and biometric ciphertexts are stored without their
+ * Base64 text encoding; anything else is kept as UTF-8 text.
+ *
+ * Layout: {@code [magic][version][flags][scheme][payload]}. A biometric payload is
+ * {@code [ivLength][iv][ciphertext]}. The magic byte can never start UTF-8 text, so values
+ * written as text by older versions are told apart by their first byte.
+ */
+final class ValueFormat {
+
+    static final byte MAGIC = (byte) 0xA7;
+    static final byte VERSION = 1;
+    static final int HEADER_SIZE = 4;
+
+    static final byte SCHEME_TEXT = 0;
+    static final byte SCHEME_KEYSTORE = 1;
+    static final byte SCHEME_ENVELOPE = 2;
+    static final byte SCHEME_BIOMETRIC = 3;
+
+    // Separates the IV and the ciphertext in the text form of a biometric value.
+    static final String BIOMETRIC_DELIMITER = "]";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private ValueFormat() {
+    }
+
+    static byte[] encode(byte scheme, byte[] payload) {
+        byte[] value = new byte[HEADER_SIZE + payload.length];
+        value[0] = MAGIC;
+        value[1] = VERSION;
+        value[2] = 0;
+        value[3] = scheme;
+        System.arraycopy(payload, 0, value, HEADER_SIZE, payload.length);
+        return value;
+    }
+
+    static byte[] encodeBiometric(byte[] iv, byte[] ciphertext) {
+        byte[] payload = new byte[1 + iv.length + ciphertext.length];
+        payload[0] = (byte) iv.length;
+        System.arraycopy(iv, 0, payload, 1, iv.length);
+        System.arraycopy(ciphertext, 0, payload, 1 + iv.length, ciphertext.length);
+        return encode(SCHEME_BIOMETRIC, payload);
+    }
+
+    /**
+     * Returns whether {@code value} starts with a binary header rather than being legacy text.
+     */
+    static boolean isEncoded(byte[] value) {
+        return value.length >= HEADER_SIZE && value[0] == MAGIC && value[1] == VERSION;
+    }
+
+    /**
+     * Converts the text form produced by {@code encrypt}/{@code EnvelopeCipher} or the biometric
+     * {@code iv]ciphertext} form to binary.
+     */
+    static byte[] fromText(String value) {
+        if (EnvelopeCipher.isEnvelope(value)) {
+            return encode(SCHEME_ENVELOPE, Base64.decode(value.substring(EnvelopeCipher.PREFIX.length()), Base64.NO_WRAP));
+        }
+        int delimiter = value.indexOf(BIOMETRIC_DELIMITER);
+        if (delimiter >= 0) {
+            try {
+                // Older versions wrapped both parts with Base64.DEFAULT, which decoding tolerates.
+                byte[] iv = Base64.decode(value.substring(0, delimiter), Base64.DEFAULT);
+                byte[] ciphertext = Base64.decode(value.substring(delimiter + 1), Base64.DEFAULT);
+                if (iv.length > 0 && iv.length <= 0xff) {
+                    return encodeBiometric(iv, ciphertext);
+                }
+            } catch (IllegalArgumentException e) {
+                // Not a biometric value after all; keep it as text.
+            }
+            return encode(SCHEME_TEXT, value.getBytes(UTF_8));
+        }
+        try {
+            byte[] ciphertext = Base64.decode(value, Base64.NO_WRAP);
+            // Only values that survive the round trip unchanged are stored without their text form.
+            if (value.equals(Base64.encodeToString(ciphertext, Base64.NO_WRAP))) {
+                return encode(SCHEME_KEYSTORE, ciphertext);
+            }
+        } catch (IllegalArgumentException e) {
+            // Not Base64.
+        }
+        return encode(SCHEME_TEXT, value.getBytes(UTF_8));
+    }
+
+    static String toText(ByteBuffer value) {
+        ByteBuffer payload = payload(value);
+        byte[] bytes = new byte[payload.remaining()];
+        payload.get(bytes);
+
+        switch (scheme(value)) {
+            case SCHEME_KEYSTORE:
+                return Base64.encodeToString(bytes, Base64.NO_WRAP);
+            case SCHEME_ENVELOPE:
+                return EnvelopeCipher.PREFIX + Base64.encodeToString(bytes, Base64.NO_WRAP);
+            case SCHEME_BIOMETRIC:
+                int ivLength = bytes[0] & 0xff;
+                return Base64.encodeToString(bytes, 1, ivLength, Base64.NO_WRAP) + BIOMETRIC_DELIMITER
+                        + Base64.encodeToString(bytes, 1 + ivLength, bytes.length - 1 - ivLength, Base64.NO_WRAP);
+            default:
+                return new String(bytes, UTF_8);
+        }
+    }
+
+    static byte scheme(ByteBuffer value) {
+        if (value.remaining() < HEADER_SIZE || value.get(value.position()) != MAGIC) {
+            throw new IllegalArgumentException("Not a binary stored value");
+        }
+        return value.get(value.position() + 3);
+    }
+
+    /**
+     * Returns the IV of a {@link #SCHEME_BIOMETRIC} value.
+     */
+    static byte[] biometricIv(ByteBuffer value) {
+        ByteBuffer payload = payload(value);
+        byte[] iv = new byte[payload.get() & 0xff];
+        payload.get(iv);
+        return iv;
+    }
+
+    /**
+     * Returns the ciphertext of a {@link #SCHEME_BIOMETRIC} value.
+     */
+    static byte[] biometricCiphertext(ByteBuffer value) {
+        ByteBuffer payload = payload(value);
+        payload.position(1 + (payload.get(0) & 0xff));
+        byte[] ciphertext = new byte[payload.remaining()];
+        payload.get(ciphertext);
+        return ciphertext;
+    }
+
+    static ByteBuffer payload(ByteBuffer value) {
+        ByteBuffer payload = value.duplicate();
+        payload.position(value.position() + HEADER_SIZE);
+        return payload.slice();
+    }
+}
@@ -0,0 +1,373 @@
+package dev.mcodex.RNSensitiveInfo;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Routes writes to the storage backends according to their durability level. Write-behind writes
+ * are held in memory and persisted per namespace on a fixed interval, and readers are served the
+ * pending values until then. Every other write first persists what is pending for its namespace,
+ * so writes to one namespace always reach the backend in the order they were made.
+ *
+ * With a coalescing window, commit writes are queued the same way and persisted at the end of the
+ * window, so a burst of writes to one key costs a single disk write of the last value. Their
+ * callers are notified once the batch that covers their write is committed.
+ */
+class WriteBehindQueue {
+
+    interface Backends {
+        StorageBackend storage(String namespace) throws IOException;
+    }
+
+    interface Callback {
+        void onPersisted();
+
+        void onFailed(IOException e);
+    }
+
+    /** Blocks until the write is on disk. */
+    static final int DURABILITY_COMMIT = 0;
+    /** Visible to readers at once, persisted by the backend in the background. */
+    static final int DURABILITY_APPLY = 1;
+    /** Kept in memory and persisted with the next periodic flush. */
+    static final int DURABILITY_WRITE_BEHIND = 2;
+
+    /** Returned by {@link #lookup} when no write is pending for a key. */
+    static final Object ABSENT = new Object();
+
+    private static final long DEFAULT_FLUSH_INTERVAL_MS = 1000;
+
+    private static class Pending {
+        // Null for a pending delete.
+        final String value;
+        // Set for coalesced commits, which are dropped instead of retried when persisting fails.
+        final boolean awaited;
+        // The write-behind write a coalesced commit replaced. Its caller was already told it
+        // succeeded, so it is put back if the commit fails.
+        final Pending superseded;
+
+        Pending(String value, boolean awaited, Pending superseded) {
+            this.value = value;
+            this.awaited = awaited;
+            this.superseded = superseded;
+        }
+    }
+
+    private static class Namespace {
+        final Object lock = new Object();
+        final LinkedHashMap<String, Pending> entries = new LinkedHashMap<>();
+        final List<Callback> callbacks = new ArrayList<>();
+        ScheduledFuture<?> flush;
+        long flushAt;
+    }
+
+    private final Backends mBackends;
+    private final ScheduledExecutorService mScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(@NonNull Runnable runnable) {
+            Thread thread = new Thread(runnable, "RNSensitiveInfo-writeBehind");
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        }
+    });
+    private final Map<String, Namespace> mNamespaces = new HashMap<>();
+    private long mFlushIntervalMillis = DEFAULT_FLUSH_INTERVAL_MS;
+    private long mCoalesceWindowMillis;
+
+    WriteBehindQueue(Backends backends) {
+        mBackends = backends;
+    }
+
+    static int parseDurability(String level) {
+        switch (level) {
+            case "commit":
+                return DURABILITY_COMMIT;
+            case "apply":
+                return DURABILITY_APPLY;
+            case "writeBehind":
+                return DURABILITY_WRITE_BEHIND;
+            default:
+                throw new IllegalArgumentException("Unknown durability " + level);
+        }
+    }
+
+    synchronized void setFlushInterval(long flushIntervalMillis) {
+        mFlushIntervalMillis = flushIntervalMillis;
+    }
+
+    /**
+     * Sets the window in which commit writes are coalesced; 0 commits every write on its own.
+     */
+    synchronized void setCoalesceWindow(long coalesceWindowMillis) {
+        mCoalesceWindowMillis = coalesceWindowMillis;
+    }
+
+    synchronized boolean isCoalescing() {
+        return mCoalesceWindowMillis > 0;
+    }
+
+    void write(String namespace, Map<String, String> puts, Collection<String> deletes, int durability) throws IOException {
+        if (durability == DURABILITY_WRITE_BEHIND) {
+            synchronized (this) {
+                enqueue(namespace, puts, deletes, null, mFlushIntervalMillis);
+            }
+            return;
+        }
+
+        Namespace state = namespace(namespace);
+        synchronized (state.lock) {
+            persistPending(namespace, state);
+            StorageBackend backend = mBackends.storage(namespace);
+            if (durability == DURABILITY_APPLY) {
+                backend.apply(puts, deletes);
+            } else {
+                backend.write(puts, deletes);
+            }
+        }
+    }
+
+    /**
+     * Queues a commit write for the end of the coalescing window. Readers see it at once, and
+     * {@code callback} is called from the flushing thread once it is on disk.
+     */
+    synchronized void writeCoalesced(String namespace, Map<String, String> puts, Collection<String> deletes, Callback callback) {
+        enqueue(namespace, puts, deletes, callback, mCoalesceWindowMillis);
+    }
+
+    /**
+     * Returns the pending value of {@code key} (null for a pending delete), or {@link #ABSENT}
+     * when the backend holds the current value.
+     */
+    synchronized Object lookup(String namespace, String key) {
+        Namespace state = mNamespaces.get(namespace);
+        if (state == null || !state.entries.containsKey(key)) {
+            return ABSENT;
+        }
+        return state.entries.get(key).value;
+    }
+
+    /**
+     * Returns a copy of the pending writes of {@code namespace}, with null values for deletes.
+     */
+    synchronized Map<String, String> pending(String namespace) {
+        Map<String, String> pending = new HashMap<>();
+        Namespace state = mNamespaces.get(namespace);
+        if (state != null) {
+            for (Map.Entry<String, Pending> entry : state.entries.entrySet()) {
+                pending.put(entry.getKey(), entry.getValue().value);
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * Persists the pending writes of {@code namespace} and waits until everything written to it,
+     * including with the apply level, is on disk.
+     */
+    void flush(String namespace) throws IOException {
+        Namespace state = namespace(namespace);
+        synchronized (state.lock) {
+            persistPending(namespace, state);
+            mBackends.storage(namespace).flush();
+        }
+    }
+
+    /**
+     * Drops the pending writes of {@code namespace} and clears its backend. Callers waiting for a
+     * dropped coalesced write are notified as persisted, since the clear supersedes it durably.
+     */
+    void clear(String namespace) throws IOException {
+        Namespace state = namespace(namespace);
+        List<Callback> callbacks;
+        synchronized (state.lock) {
+            mBackends.storage(namespace).clear();
+            synchronized (this) {
+                state.entries.clear();
+                callbacks = new ArrayList<>(state.callbacks);
+                state.callbacks.clear();
+            }
+        }
+        for (Callback callback : callbacks) {
+            callback.onPersisted();
+        }
+    }
+
+    /**
+     * Persists the pending writes of every namespace, logging the ones that fail.
+     */
+    void flushAll() {
+        Map<String, Namespace> namespaces;
+        synchronized (this) {
+            namespaces = new HashMap<>(mNamespaces);
+        }
+        for (Map.Entry<String, Namespace> entry : namespaces.entrySet()) {
+            try {
+                synchronized (entry.getValue().lock) {
+                    persistPending(entry.getKey(), entry.getValue());
+                }
+            } catch (IOException e) {
+                Log.d("RNSensitiveInfo", "Could not flush " + entry.getKey() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    void shutdown() {
+        mScheduler.shutdown();
+        flushAll();
+    }
+
+    private Namespace namespace(String namespace) {
+        synchronized (this) {
+            Namespace state = mNamespaces.get(namespace);
+            if (state == null) {
+                state = new Namespace();
+                mNamespaces.put(namespace, state);
+            }
+            return state;
+        }
+    }
+
+    /**
+     * Adds a write to the pending entries and makes sure they are persisted within
+     * {@code delayMillis}. Callers hold the queue monitor.
+     */
+    private void enqueue(String namespace, Map<String, String> puts, Collection<String> deletes, Callback callback, long delayMillis) {
+        Namespace state = namespace(namespace);
+        boolean awaited = callback != null;
+        for (String key : deletes) {
+            state.entries.put(key, new Pending(null, awaited, superseded(state, key, awaited)));
+        }
+        for (Map.Entry<String, String> entry : puts.entrySet()) {
+            state.entries.put(entry.getKey(), new Pending(entry.getValue(), awaited, superseded(state, entry.getKey(), awaited)));
+        }
+        if (callback != null) {
+            state.callbacks.add(callback);
+        }
+
+        long flushAt = SystemClock.elapsedRealtime() + delayMillis;
+        if (state.flush == null || flushAt < state.flushAt) {
+            if (state.flush != null) {
+                state.flush.cancel(false);
+            }
+            state.flushAt = flushAt;
+            state.flush = schedule(namespace, state, delayMillis);
+        }
+    }
+
+    /**
+     * Returns the write-behind write to fall back to if a new write of {@code key} fails.
+     */
+    private static Pending superseded(Namespace state, String key, boolean awaited) {
+        Pending previous = state.entries.get(key);
+        if (!awaited || previous == null) {
+            return null;
+        }
+        return previous.awaited ? previous.superseded : previous;
+    }
+
+    private ScheduledFuture<?> schedule(final String namespace, final Namespace state, long delayMillis) {
+        return mScheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (WriteBehindQueue.this) {
+                    state.flush = null;
+                }
+                try {
+                    synchronized (state.lock) {
+                        persistPending(namespace, state);
+                    }
+                } catch (IOException e) {
+                    Log.d("RNSensitiveInfo", "Could not flush " + namespace + ", retrying: " + e.getMessage());
+                    synchronized (WriteBehindQueue.this) {
+                        if (!state.entries.isEmpty() && state.flush == null) {
+                            state.flushAt = SystemClock.elapsedRealtime() + mFlushIntervalMillis;
+                            state.flush = schedule(namespace, state, mFlushIntervalMillis);
+                        }
+                    }
+                }
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes the pending entries of {@code namespace} as one durable batch and notifies the callers
+     * waiting for it. Entries stay visible to readers until the write succeeded and are only dropped
+     * if no newer write replaced them in the meantime. When the write fails, coalesced commits are
+     * dropped and their callers notified, while write-behind entries, including those a dropped
+     * commit had replaced, are kept for a retry. Callers hold the namespace lock.
+     */
+    private void persistPending(String namespace, Namespace state) throws IOException {
+        Map<String, Pending> batch;
+        List<Callback> callbacks;
+        synchronized (this) {
+            if (state.entries.isEmpty()) {
+                return;
+            }
+            batch = new HashMap<>(state.entries);
+            callbacks = new ArrayList<>(state.callbacks);
+            state.callbacks.clear();
+        }
+
+        Map<String, String> puts = new HashMap<>();
+        List<String> deletes = new ArrayList<>();
+        for (Map.Entry<String, Pending> entry : batch.entrySet()) {
+            if (entry.getValue().value == null) {
+                deletes.add(entry.getKey());
+            } else {
+                puts.put(entry.getKey(), entry.getValue().value);
+            }
+        }
+
+        IOException failure = null;
+        try {
+            mBackends.storage(namespace).write(puts, deletes);
+        } catch (IOException e) {
+            failure = e;
+        }
+
+        synchronized (this) {
+            for (Map.Entry<String, Pending> entry : batch.entrySet()) {
+                Pending pending = entry.getValue();
+                if (state.entries.get(entry.getKey()) != pending) {
+                    continue;
+                }
+                if (failure == null) {
+                    state.entries.remove(entry.getKey());
+                } else if (pending.awaited && pending.superseded != null) {
+                    state.entries.put(entry.getKey(), pending.superseded);
+                } else if (pending.awaited) {
+                    state.entries.remove(entry.getKey());
+                }
+            }
+        }
+
+        if (failure == null) {
+            for (Callback callback : callbacks) {
+                callback.onPersisted();
+            }
+        } else {
+            // Newest first, so a caller undoing its write restores the state the next older one left.
+            for (int i = callbacks.size() - 1; i >= 0; i--) {
+                callbacks.get(i).onFailed(failure);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -12,4 +12,9 @@ public interface AppConstants {
     String E_BIOMETRIC_NOT_SUPPORTED = "E_BIOMETRIC_NOT_SUPPORTED";
     String E_INIT_FAILURE = "E_INIT_FAILURE";
     String E_BIOMETRICS_INVALIDATED = "E_BIOMETRICS_INVALIDATED";
+    String E_EXECUTOR_REJECTED = "E_EXECUTOR_REJECTED";
+    String E_EXECUTOR_SHUTDOWN = "E_EXECUTOR_SHUTDOWN";
+    String E_BATCH_NOT_SUPPORTED = "E_BATCH_NOT_SUPPORTED";
+    String E_COMPARE_AND_SET_NOT_SUPPORTED = "E_COMPARE_AND_SET_NOT_SUPPORTED";
+    String E_EXPIRY_NOT_SUPPORTED = "E_EXPIRY_NOT_SUPPORTED";
 }
\ No newline at end of file
@@ -0,0 +1,75 @@
+package dev.mcodex.RNSensitiveInfo;
+
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.DataFormatException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CompressionTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static byte[] repetitive(int length) {
+        byte[] value = new byte[length];
+        Arrays.fill(value, (byte) 'a');
+        return value;
+    }
+
+    @Test
+    public void compressesValuesAtTheThreshold() throws DataFormatException {
+        byte[] plaintext = repetitive(1024);
+        byte[] compressed = Compression.compress(plaintext, 1024);
+        assertEquals((byte) 0xFF, compressed[0]);
+        assertTrue(compressed.length < plaintext.length);
+        assertArrayEquals(plaintext, Compression.decompress(compressed));
+    }
+
+    @Test
+    public void leavesSmallValuesAlone() {
+        byte[] plaintext = repetitive(1023);
+        assertSame(plaintext, Compression.compress(plaintext, 1024));
+        assertSame(plaintext, Compression.compress(plaintext, 0));
+    }
+
+    @Test
+    public void leavesIncompressibleValuesAlone() {
+        byte[] plaintext = new byte[4096];
+        new Random(1).nextBytes(plaintext);
+        assertSame(plaintext, Compression.compress(plaintext, 1));
+    }
+
+    @Test
+    public void legacyPlaintextPassesThrough() throws DataFormatException {
+        for (String legacy : new String[]{"", "x", "secret value", "\u00e9t\u00e9 \u2603"}) {
+            byte[] plaintext = legacy.getBytes(UTF_8);
+            assertArrayEquals(plaintext, Compression.decompress(plaintext));
+        }
+    }
+
+    @Test
+    public void rejectsUnknownFlags() {
+        try {
+            Compression.decompress(new byte[]{(byte) 0xFF, 2, 0});
+            fail();
+        } catch (DataFormatException expected) {
+        }
+    }
+
+    @Test
+    public void rejectsTruncatedValues() {
+        byte[] compressed = Compression.compress(repetitive(4096), 1);
+        try {
+            Compression.decompress(Arrays.copyOf(compressed, compressed.length / 2));
+            fail();
+        } catch (DataFormatException expected) {
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package dev.mcodex.RNSensitiveInfo;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EntryVersionsTest {
+
+    @Test
+    public void unwrittenEntriesShareTheStartVersion() {
+        EntryVersions versions = new EntryVersions();
+        long start = versions.get("a", "x");
+        assertEquals(start, versions.get("a", "y"));
+        assertEquals(start, versions.get("b", "x"));
+        assertNotEquals(EntryVersions.ABSENT, start);
+    }
+
+    @Test
+    public void writesGiveNewIncreasingVersions() {
+        EntryVersions versions = new EntryVersions();
+        long start = versions.get("a", "x");
+
+        long first = versions.bump("a", Arrays.asList("x", "y"));
+        assertTrue(first > start);
+        assertEquals(first, versions.get("a", "x"));
+        assertEquals(first, versions.get("a", "y"));
+        assertEquals(start, versions.get("a", "z"));
+        assertEquals(start, versions.get("b", "x"));
+
+        long second = versions.bump("a", Collections.singletonList("x"));
+        assertTrue(second > first);
+        assertEquals(second, versions.get("a", "x"));
+        assertEquals(first, versions.get("a", "y"));
+    }
+
+    @Test
+    public void bumpAllReplacesEveryVersionOfANamespace() {
+        EntryVersions versions = new EntryVersions();
+        long start = versions.get("a", "x");
+        long written = versions.bump("a", Collections.singletonList("x"));
+
+        versions.bumpAll("a");
+        long cleared = versions.get("a", "x");
+        assertTrue(cleared > written);
+        assertEquals(cleared, versions.get("a", "never-written"));
+        assertEquals(start, versions.get("b", "x"));
+    }
+}
@@ -0,0 +1,256 @@
+package dev.mcodex.RNSensitiveInfo;
+
+import android.content.SharedPreferences;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ExpiryIndexTest {
+
+    private static class InMemoryPreferences implements SharedPreferences {
+        final Map<String, Object> mValues = new HashMap<>();
+        boolean mFailing;
+
+        @Override
+        public Map<String, ?> getAll() {
+            return new HashMap<>(mValues);
+        }
+
+        @Override
+        public String getString(String key, String defValue) {
+            return mValues.containsKey(key) ? (String) mValues.get(key) : defValue;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Set<String> getStringSet(String key, Set<String> defValues) {
+            return mValues.containsKey(key) ? (Set<String>) mValues.get(key) : defValues;
+        }
+
+        @Override
+        public int getInt(String key, int defValue) {
+            return mValues.containsKey(key) ? (Integer) mValues.get(key) : defValue;
+        }
+
+        @Override
+        public long getLong(String key, long defValue) {
+            return mValues.containsKey(key) ? (Long) mValues.get(key) : defValue;
+        }
+
+        @Override
+        public float getFloat(String key, float defValue) {
+            return mValues.containsKey(key) ? (Float) mValues.get(key) : defValue;
+        }
+
+        @Override
+        public boolean getBoolean(String key, boolean defValue) {
+            return mValues.containsKey(key) ? (Boolean) mValues.get(key) : defValue;
+        }
+
+        @Override
+        public boolean contains(String key) {
+            return mValues.containsKey(key);
+        }
+
+        @Override
+        public Editor edit() {
+            return new InMemoryEditor();
+        }
+
+        @Override
+        public void registerOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        }
+
+        @Override
+        public void unregisterOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        }
+
+        private class InMemoryEditor implements Editor {
+            private final Map<String, Object> mPuts = new HashMap<>();
+            private final Set<String> mRemoves = new HashSet<>();
+            private boolean mClear;
+
+            @Override
+            public Editor putString(String key, String value) {
+                mPuts.put(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor putStringSet(String key, Set<String> values) {
+                mPuts.put(key, values);
+                return this;
+            }
+
+            @Override
+            public Editor putInt(String key, int value) {
+                mPuts.put(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor putLong(String key, long value) {
+                mPuts.put(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor putFloat(String key, float value) {
+                mPuts.put(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor putBoolean(String key, boolean value) {
+                mPuts.put(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor remove(String key) {
+                mRemoves.add(key);
+                return this;
+            }
+
+            @Override
+            public Editor clear() {
+                mClear = true;
+                return this;
+            }
+
+            @Override
+            public boolean commit() {
+                if (mFailing) {
+                    return false;
+                }
+                if (mClear) {
+                    mValues.clear();
+                }
+                mValues.keySet().removeAll(mRemoves);
+                mValues.putAll(mPuts);
+                return true;
+            }
+
+            @Override
+            public void apply() {
+                commit();
+            }
+        }
+    }
+
+    private final Map<String, InMemoryPreferences> mFiles = new HashMap<>();
+    private final CountDownLatch mDeadline = new CountDownLatch(1);
+    private final ExpiryIndex mIndex = newIndex();
+
+    private ExpiryIndex newIndex() {
+        return new ExpiryIndex(new ExpiryIndex.Storage() {
+            @Override
+            public SharedPreferences open(String namespace) {
+                InMemoryPreferences prefs = mFiles.get(namespace);
+                if (prefs == null) {
+                    prefs = new InMemoryPreferences();
+                    mFiles.put(namespace, prefs);
+                }
+                return prefs;
+            }
+        }, new ExpiryIndex.Listener() {
+            @Override
+            public void onDeadline() {
+                mDeadline.countDown();
+            }
+        });
+    }
+
+    @After
+    public void shutdown() {
+        mIndex.shutdown();
+    }
+
+    @Test
+    public void reportsExpiredKeysByNamespace() throws IOException {
+        long now = System.currentTimeMillis();
+        mIndex.set("a", Arrays.asList("old", "older"), now - 1000);
+        mIndex.set("a", Collections.singletonList("fresh"), now + 60000);
+        mIndex.set("b", Collections.singletonList("gone"), now - 1);
+
+        assertTrue(mIndex.isExpired("a", "old"));
+        assertFalse(mIndex.isExpired("a", "fresh"));
+        assertFalse(mIndex.isExpired("a", "unknown"));
+
+        Map<String, List<String>> expired = mIndex.expired();
+        assertEquals(2, expired.size());
+        assertEquals(2, expired.get("a").size());
+        assertTrue(expired.get("a").containsAll(Arrays.asList("old", "older")));
+        assertEquals(Collections.singletonList("gone"), expired.get("b"));
+    }
+
+    @Test
+    public void deadlinesArePersisted() throws IOException {
+        long deadline = System.currentTimeMillis() - 1;
+        mIndex.set("a", Collections.singletonList("key"), deadline);
+        mIndex.remove("a", Collections.singletonList("other"));
+
+        ExpiryIndex reopened = newIndex();
+        try {
+            assertTrue(reopened.isExpired("a", "key"));
+            reopened.remove("a", Collections.singletonList("key"));
+            assertFalse(reopened.isExpired("a", "key"));
+            assertTrue(mFiles.get("a").getAll().isEmpty());
+        } finally {
+            reopened.shutdown();
+        }
+    }
+
+    @Test
+    public void restoresThePreviousDeadlines() throws IOException {
+        long earlier = System.currentTimeMillis() + 60000;
+        mIndex.set("a", Collections.singletonList("kept"), earlier);
+
+        Map<String, Long> previous = mIndex.deadlines("a", Arrays.asList("kept", "new"));
+        assertEquals(Long.valueOf(earlier), previous.get("kept"));
+        assertNull(previous.get("new"));
+
+        mIndex.set("a", Arrays.asList("kept", "new"), System.currentTimeMillis() - 1);
+        mIndex.restore("a", previous);
+
+        assertFalse(mIndex.isExpired("a", "kept"));
+        assertFalse(mIndex.isExpired("a", "new"));
+        assertEquals(earlier, mFiles.get("a").getLong("kept", 0));
+        assertFalse(mFiles.get("a").contains("new"));
+    }
+
+    @Test
+    public void keepsMemoryUnchangedWhenPersistingFails() throws IOException {
+        mIndex.set("a", Collections.singletonList("key"), System.currentTimeMillis() + 60000);
+        mFiles.get("a").mFailing = true;
+        try {
+            mIndex.set("a", Collections.singletonList("key"), System.currentTimeMillis() - 1);
+            fail();
+        } catch (IOException expected) {
+        }
+        assertFalse(mIndex.isExpired("a", "key"));
+    }
+
+    @Test
+    public void notifiesWhenADeadlinePasses() throws Exception {
+        mIndex.set("a", Collections.singletonList("key"), System.currentTimeMillis() + 50);
+        assertTrue(mDeadline.await(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,31 @@
+package dev.mcodex.RNSensitiveInfo;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class FileNamesTest {
+
+    @Test
+    public void keepsPlainNames() {
+        assertEquals("shared_preferences", FileNames.encode("shared_preferences"));
+        assertEquals("my-app.v2", FileNames.encode("my-app.v2"));
+    }
+
+    @Test
+    public void keepsNamesThatUsedToCollideApart() {
+        assertNotEquals(FileNames.encode("a_b"), FileNames.encode("a:b"));
+        assertNotEquals(FileNames.encode("a%3Ab"), FileNames.encode("a:b"));
+        assertEquals("a%3Ab", FileNames.encode("a:b"));
+        assertEquals("a%253Ab", FileNames.encode("a%3Ab"));
+    }
+
+    @Test
+    public void escapesPathsAndLeadingDots() {
+        assertEquals("%2E", FileNames.encode("."));
+        assertEquals("%2E.", FileNames.encode(".."));
+        assertEquals("%2E.%2Fetc", FileNames.encode("../etc"));
+        assertEquals("%C3%A9", FileNames.encode("\u00e9"));
+    }
+}
@@ -0,0 +1,91 @@
+package dev.mcodex.RNSensitiveInfo;
+
+import com.facebook.react.bridge.Callback;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.PromiseImpl;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+// Only the resolve path: rejecting a PromiseImpl needs the React Native native libraries.
+public class InFlightReadsTest {
+
+    private final List<String> mResolved = new ArrayList<>();
+
+    private Promise caller(final String name) {
+        return new PromiseImpl(new Callback() {
+            @Override
+            public void invoke(Object... args) {
+                mResolved.add(name + "=" + args[0]);
+            }
+        }, new Callback() {
+            @Override
+            public void invoke(Object... args) {
+                mResolved.add(name + " rejected");
+            }
+        });
+    }
+
+    @Test
+    public void concurrentReadsShareOneResult() {
+        InFlightReads reads = new InFlightReads();
+        Promise read = reads.join("ns", "key", false, caller("first"));
+        assertNotNull(read);
+        assertNull(reads.join("ns", "key", false, caller("second")));
+
+        read.resolve("value");
+        assertEquals(Arrays.asList("first=value", "second=value"), mResolved);
+
+        // The flight has landed, so the next read starts its own.
+        assertNotNull(reads.join("ns", "key", false, caller("third")));
+    }
+
+    @Test
+    public void keysNamespacesAndTouchIDFlyApart() {
+        InFlightReads reads = new InFlightReads();
+        assertNotNull(reads.join("ns", "key", false, caller("a")));
+        assertNotNull(reads.join("ns", "other", false, caller("b")));
+        assertNotNull(reads.join("other", "key", false, caller("c")));
+        assertNotNull(reads.join("ns", "key", true, caller("d")));
+    }
+
+    @Test
+    public void aWriteDetachesTheReadInFlight() {
+        InFlightReads reads = new InFlightReads();
+        Promise stale = reads.join("ns", "key", false, caller("before"));
+        reads.detach("ns", Collections.singletonList("key"));
+
+        Promise fresh = reads.join("ns", "key", false, caller("after"));
+        assertNotNull(fresh);
+
+        stale.resolve("old");
+        assertEquals(Collections.singletonList("before=old"), mResolved);
+        // The stale flight landing did not end the fresh one.
+        assertNull(reads.join("ns", "key", false, caller("joined")));
+
+        fresh.resolve("new");
+        assertEquals(Arrays.asList("before=old", "after=new", "joined=new"), mResolved);
+    }
+
+    @Test
+    public void clearingANamespaceDetachesItsReads() {
+        InFlightReads reads = new InFlightReads();
+        reads.join("ns", "a", false, caller("a"));
+        reads.join("ns", "b", true, caller("b"));
+        reads.join("other", "a", false, caller("c"));
+
+        reads.detachNamespace("ns");
+
+        assertNotNull(reads.join("ns", "a", false, caller("a2")));
+        assertNotNull(reads.join("ns", "b", true, caller("b2")));
+        assertNull(reads.join("other", "a", false, caller("c2")));
+    }
+}
@@ -0,0 +1,128 @@
+package dev.mcodex.RNSensitiveInfo;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class KeyIndexTest {
+
+    private static class CountingLoader implements KeyIndex.Loader {
+        final Set<String> mKeys = new HashSet<>();
+        int mLoads;
+
+        CountingLoader(String... keys) {
+            mKeys.addAll(Arrays.asList(keys));
+        }
+
+        @Override
+        public synchronized Set<String> load(String namespace) {
+            mLoads++;
+            return new HashSet<>(mKeys);
+        }
+    }
+
+    @Test
+    public void pagesThroughKeysWithACursor() throws IOException {
+        KeyIndex index = new KeyIndex(new CountingLoader("d", "a", "c", "b", "e"));
+
+        assertEquals(Arrays.asList("a", "b"), index.keysAfter("ns", null, 2));
+        assertEquals(Arrays.asList("c", "d"), index.keysAfter("ns", "b", 2));
+        assertEquals(Collections.singletonList("e"), index.keysAfter("ns", "d", 2));
+        assertEquals(Collections.<String>emptyList(), index.keysAfter("ns", "e", 2));
+        // A cursor that is no longer a key still resumes after it.
+        assertEquals(Arrays.asList("c", "d"), index.keysAfter("ns", "bb", 2));
+    }
+
+    @Test
+    public void findsKeysByPrefix() throws IOException {
+        KeyIndex index = new KeyIndex(new CountingLoader("user.name", "user", "user.id", "users", "token"));
+
+        assertEquals(Arrays.asList("user", "user.id", "user.name", "users"), index.keysWithPrefix("ns", "user"));
+        assertEquals(Arrays.asList("user.id", "user.name"), index.keysWithPrefix("ns", "user."));
+        assertEquals(Collections.<String>emptyList(), index.keysWithPrefix("ns", "x"));
+    }
+
+    @Test
+    public void loadsOnceAndFollowsUpdates() throws IOException {
+        CountingLoader loader = new CountingLoader("a", "b");
+        KeyIndex index = new KeyIndex(loader);
+
+        assertEquals(Arrays.asList("a", "b"), index.keys("ns"));
+        index.update("ns", Collections.singletonList("c"), Collections.singletonList("a"));
+        assertEquals(Arrays.asList("b", "c"), index.keys("ns"));
+        assertEquals(1, loader.mLoads);
+
+        index.invalidate("ns");
+        assertEquals(Arrays.asList("a", "b"), index.keys("ns"));
+        assertEquals(2, loader.mLoads);
+    }
+
+    @Test
+    public void doesNotKeepALoadThatRacedWithAWrite() throws IOException {
+        final KeyIndex[] index = new KeyIndex[1];
+        final CountingLoader loader = new CountingLoader("a") {
+            @Override
+            public synchronized Set<String> load(String namespace) {
+                Set<String> keys = super.load(namespace);
+                if (mLoads == 1) {
+                    // A write lands after the backend was read.
+                    mKeys.add("b");
+                    index[0].update(namespace, Collections.singletonList("b"), Collections.<String>emptyList());
+                }
+                return keys;
+            }
+        };
+        index[0] = new KeyIndex(loader);
+
+        assertEquals(Collections.singletonList("a"), index[0].keys("ns"));
+        assertEquals(Arrays.asList("a", "b"), index[0].keys("ns"));
+        assertEquals(2, loader.mLoads);
+    }
+
+    @Test(timeout = 5000)
+    public void loadsOutsideTheIndexLock() throws Exception {
+        // The loader takes a lock that another thread holds while it invalidates the index.
+        final Object backendLock = new Object();
+        final CountDownLatch loading = new CountDownLatch(1);
+        final KeyIndex index = new KeyIndex(new KeyIndex.Loader() {
+            @Override
+            public Set<String> load(String namespace) {
+                loading.countDown();
+                synchronized (backendLock) {
+                    return Collections.singleton("a");
+                }
+            }
+        });
+
+        final AtomicReference<List<String>> keys = new AtomicReference<>();
+        Thread reader;
+        synchronized (backendLock) {
+            reader = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        keys.set(index.keys("ns"));
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+            reader.start();
+            assertTrue(loading.await(1, TimeUnit.SECONDS));
+            index.invalidate("ns");
+        }
+        reader.join();
+        assertEquals(Collections.singletonList("a"), keys.get());
+    }
+}
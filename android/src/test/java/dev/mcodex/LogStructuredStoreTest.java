@@ -0,0 +1,92 @@
+package dev.mcodex.RNSensitiveInfo;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class LogStructuredStoreTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void replaysWritesAndDeletes() throws IOException {
+        File directory = mFolder.newFolder();
+        LogStructuredStore store = LogStructuredStore.open(directory);
+        store.write(Collections.singletonMap("a", "first value"), Collections.<String>emptyList());
+        store.write(Collections.singletonMap("b", "second value"), Collections.<String>emptyList());
+        store.write(Collections.<String, String>emptyMap(), Collections.singletonList("b"));
+        store.close();
+
+        store = LogStructuredStore.open(directory);
+        assertEquals("first value", store.get("a"));
+        assertFalse(store.contains("b"));
+        store.close();
+    }
+
+    @Test
+    public void deletesAnEmptySegment() throws IOException {
+        File directory = writeOneValue();
+        newSegment(directory, new byte[0]);
+        assertRecovers(directory);
+    }
+
+    @Test
+    public void deletesASegmentWithAShortHeader() throws IOException {
+        File directory = writeOneValue();
+        newSegment(directory, new byte[]{0x52, 0x4e, 0x53});
+        assertRecovers(directory);
+    }
+
+    @Test
+    public void deletesASegmentWithAZeroedHeader() throws IOException {
+        File directory = writeOneValue();
+        newSegment(directory, new byte[6]);
+        assertRecovers(directory);
+    }
+
+    @Test
+    public void truncatesATornTail() throws IOException {
+        File directory = writeOneValue();
+        FileOutputStream out = new FileOutputStream(new File(directory, "1.log"), true);
+        out.write(new byte[]{1, 0, 0, 0, 5, 0, 0});
+        out.close();
+        assertRecovers(directory);
+    }
+
+    private File writeOneValue() throws IOException {
+        File directory = mFolder.newFolder();
+        LogStructuredStore store = LogStructuredStore.open(directory);
+        store.write(Collections.singletonMap("a", "first value"), Collections.<String>emptyList());
+        store.close();
+        return directory;
+    }
+
+    private static void newSegment(File directory, byte[] content) throws IOException {
+        FileOutputStream out = new FileOutputStream(new File(directory, "2.log"));
+        out.write(content);
+        out.close();
+    }
+
+    private static void assertRecovers(File directory) throws IOException {
+        LogStructuredStore store = LogStructuredStore.open(directory);
+        assertEquals("first value", store.get("a"));
+        assertNull(store.get("b"));
+        store.write(Collections.singletonMap("b", "second value"), Collections.<String>emptyList());
+        store.close();
+
+        store = LogStructuredStore.open(directory);
+        assertEquals("first value", store.get("a"));
+        assertEquals("second value", store.get("b"));
+        store.close();
+    }
+}
@@ -0,0 +1,178 @@
+package dev.mcodex.RNSensitiveInfo;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MappedValueStoreTest {
+
+    private static final int DATA_END_OFFSET = 8;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void keepsWritesAcrossReopen() throws IOException {
+        File file = mFolder.newFile("store.map");
+        MappedValueStore store = MappedValueStore.open(file);
+        store.writeBytes(values("a", 1, 2, 3, "b", 4), Collections.<String>emptyList(), true);
+        store.writeBytes(Collections.<String, byte[]>emptyMap(), Collections.singletonList("b"), true);
+        store.close();
+
+        store = MappedValueStore.open(file);
+        assertArrayEquals(new byte[]{1, 2, 3}, bytes(store.getBuffer("a")));
+        assertFalse(store.contains("b"));
+        store.close();
+    }
+
+    @Test
+    public void dropsRecordsCutOffByTruncation() throws IOException {
+        File file = mFolder.newFile("store.map");
+        MappedValueStore store = MappedValueStore.open(file);
+        store.writeBytes(values("a", 1), Collections.<String>emptyList(), true);
+        int firstEnd = dataEnd(file);
+        store.writeBytes(values("b", 2, 3, 4), Collections.<String>emptyList(), true);
+        store.close();
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(firstEnd + 5);
+        raf.close();
+
+        store = MappedValueStore.open(file);
+        assertArrayEquals(new byte[]{1}, bytes(store.getBuffer("a")));
+        assertNull(store.getBuffer("b"));
+        store.writeBytes(values("c", 5), Collections.<String>emptyList(), true);
+        store.close();
+
+        store = MappedValueStore.open(file);
+        assertEquals(2, store.keys().size());
+        assertArrayEquals(new byte[]{5}, bytes(store.getBuffer("c")));
+        store.close();
+    }
+
+    @Test
+    public void ignoresDataEndAheadOfTheRecords() throws IOException {
+        File file = mFolder.newFile("store.map");
+        MappedValueStore store = MappedValueStore.open(file);
+        store.writeBytes(values("a", 1), Collections.<String>emptyList(), true);
+        store.close();
+        setDataEnd(file, dataEnd(file) + 64);
+
+        store = MappedValueStore.open(file);
+        assertEquals(Collections.singleton("a"), store.keys());
+        store.close();
+    }
+
+    @Test
+    public void dropsRecordsWithABadChecksum() throws IOException {
+        File file = mFolder.newFile("store.map");
+        MappedValueStore store = MappedValueStore.open(file);
+        store.writeBytes(values("a", 1), Collections.<String>emptyList(), true);
+        store.writeBytes(values("b", 2), Collections.<String>emptyList(), true);
+        int end = dataEnd(file);
+        store.close();
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.seek(end - 1);
+        raf.write(9);
+        raf.close();
+
+        store = MappedValueStore.open(file);
+        assertTrue(store.contains("a"));
+        assertFalse(store.contains("b"));
+        store.close();
+    }
+
+    @Test
+    public void opensAFileShorterThanItsHeader() throws IOException {
+        File file = mFolder.newFile("store.map");
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(4);
+        raf.close();
+
+        MappedValueStore store = MappedValueStore.open(file);
+        assertTrue(store.keys().isEmpty());
+        store.close();
+    }
+
+    @Test
+    public void upgradesAFileWithoutChecksums() throws IOException {
+        File file = mFolder.newFile("store.map");
+        ByteBuffer legacy = ByteBuffer.allocate(64 * 1024);
+        legacy.putInt(0x524e534d).put((byte) 1).position(16);
+        legacy.putInt(1).putInt(2).put((byte) 'a').put(new byte[]{7, 8});
+        legacy.putInt(DATA_END_OFFSET, legacy.position());
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.write(legacy.array());
+        raf.close();
+
+        MappedValueStore store = MappedValueStore.open(file);
+        assertArrayEquals(new byte[]{7, 8}, bytes(store.getBuffer("a")));
+        store.writeBytes(values("b", 9), Collections.<String>emptyList(), true);
+        store.close();
+
+        store = MappedValueStore.open(file);
+        assertArrayEquals(new byte[]{7, 8}, bytes(store.getBuffer("a")));
+        assertArrayEquals(new byte[]{9}, bytes(store.getBuffer("b")));
+        store.close();
+    }
+
+    private static Map<String, byte[]> values(Object... keysAndBytes) {
+        Map<String, byte[]> values = new HashMap<>();
+        String key = null;
+        ByteBuffer value = ByteBuffer.allocate(keysAndBytes.length);
+        for (Object item : keysAndBytes) {
+            if (item instanceof String) {
+                if (key != null) {
+                    values.put(key, bytes((ByteBuffer) value.flip()));
+                    value.clear();
+                }
+                key = (String) item;
+            } else {
+                value.put((byte) (int) (Integer) item);
+            }
+        }
+        values.put(key, bytes((ByteBuffer) value.flip()));
+        return values;
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    private static int dataEnd(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            raf.seek(DATA_END_OFFSET);
+            return raf.readInt();
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static void setDataEnd(File file, int dataEnd) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(DATA_END_OFFSET);
+            raf.writeInt(dataEnd);
+        } finally {
+            raf.close();
+        }
+    }
+}
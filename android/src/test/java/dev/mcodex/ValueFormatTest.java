@@ -0,0 +1,82 @@
+package dev.mcodex.RNSensitiveInfo;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+// Robolectric provides a working android.util.Base64.
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ValueFormatTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static ByteBuffer roundTrip(String text, byte expectedScheme) {
+        byte[] encoded = ValueFormat.fromText(text);
+        assertTrue(ValueFormat.isEncoded(encoded));
+        ByteBuffer value = ByteBuffer.wrap(encoded);
+        assertEquals(expectedScheme, ValueFormat.scheme(value));
+        assertEquals(text, ValueFormat.toText(value));
+        return value;
+    }
+
+    @Test
+    public void keystoreCiphertextIsStoredWithoutBase64() {
+        ByteBuffer value = roundTrip("AAECAwQFBgcICQoLDA0ODw==", ValueFormat.SCHEME_KEYSTORE);
+        assertEquals(16, ValueFormat.payload(value).remaining());
+    }
+
+    @Test
+    public void envelopeCiphertextKeepsItsPrefix() {
+        ByteBuffer value = roundTrip(EnvelopeCipher.PREFIX + "AAECAwQFBgcICQoLDA0ODw==", ValueFormat.SCHEME_ENVELOPE);
+        assertEquals(16, ValueFormat.payload(value).remaining());
+    }
+
+    @Test
+    public void biometricValueSplitsIvAndCiphertext() {
+        ByteBuffer value = roundTrip("AAECAwQFBgcICQoL]DA0ODw==", ValueFormat.SCHEME_BIOMETRIC);
+        assertArrayEquals(new byte[]{0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11}, ValueFormat.biometricIv(value));
+        assertArrayEquals(new byte[]{12, 13, 14, 15}, ValueFormat.biometricCiphertext(value));
+    }
+
+    @Test
+    public void legacyTextStaysText() {
+        roundTrip("not base64 at all", ValueFormat.SCHEME_TEXT);
+        roundTrip("no]base64 either!", ValueFormat.SCHEME_TEXT);
+        // Decodable, but only canonical NO_WRAP text may drop its text form.
+        roundTrip("AAECAwQFBgcICQoLDA0ODw==\n", ValueFormat.SCHEME_TEXT);
+    }
+
+    @Test
+    public void blobPointersStayText() {
+        roundTrip(BlobStore.POINTER_PREFIX + "shared_preferences/0f1e.blob", ValueFormat.SCHEME_TEXT);
+        roundTrip(BlobStore.WRAPPED_POINTER_PREFIX + "shared_preferences/0f1e.blob#AAEC+/8=", ValueFormat.SCHEME_TEXT);
+    }
+
+    @Test
+    public void legacyTextIsNotMistakenForBinary() {
+        assertFalse(ValueFormat.isEncoded("AAECAwQFBgcICQoLDA0ODw==".getBytes(UTF_8)));
+        assertFalse(ValueFormat.isEncoded("\u00e9t\u00e9".getBytes(UTF_8)));
+        assertFalse(ValueFormat.isEncoded(new byte[]{ValueFormat.MAGIC}));
+    }
+
+    @Test
+    public void readsValuesAtAnOffset() {
+        byte[] encoded = ValueFormat.fromText("AAECAwQFBgcICQoLDA0ODw==");
+        ByteBuffer region = ByteBuffer.allocate(encoded.length + 8);
+        region.position(8);
+        region.put(encoded);
+        region.position(8);
+        assertEquals(ValueFormat.SCHEME_KEYSTORE, ValueFormat.scheme(region));
+        assertEquals("AAECAwQFBgcICQoLDA0ODw==", ValueFormat.toText(region));
+    }
+}
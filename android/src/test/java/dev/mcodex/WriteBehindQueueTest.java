@@ -0,0 +1,113 @@
+package dev.mcodex.RNSensitiveInfo;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class WriteBehindQueueTest {
+
+    private static class FlakyBackend implements StorageBackend {
+        final Map<String, String> mValues = new HashMap<>();
+        boolean mFailing;
+
+        @Override
+        public String get(String key) {
+            return mValues.get(key);
+        }
+
+        @Override
+        public boolean contains(String key) {
+            return mValues.containsKey(key);
+        }
+
+        @Override
+        public Set<String> keys() {
+            return mValues.keySet();
+        }
+
+        @Override
+        public Map<String, String> getAll() {
+            return new HashMap<>(mValues);
+        }
+
+        @Override
+        public synchronized void write(Map<String, String> puts, Collection<String> deletes) throws IOException {
+            if (mFailing) {
+                throw new IOException("Disk full");
+            }
+            mValues.keySet().removeAll(deletes);
+            mValues.putAll(puts);
+        }
+
+        @Override
+        public void apply(Map<String, String> puts, Collection<String> deletes) throws IOException {
+            write(puts, deletes);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void clear() {
+            mValues.clear();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Test
+    public void keepsAWriteBehindValueReplacedByAFailedCommit() throws IOException {
+        final FlakyBackend backend = new FlakyBackend();
+        WriteBehindQueue queue = new WriteBehindQueue(new WriteBehindQueue.Backends() {
+            @Override
+            public StorageBackend storage(String namespace) {
+                return backend;
+            }
+        });
+        queue.setFlushInterval(60 * 60 * 1000);
+        queue.setCoalesceWindow(60 * 60 * 1000);
+
+        final IOException[] failure = new IOException[1];
+        queue.write("ns", Collections.singletonMap("a", "1"), Collections.<String>emptyList(),
+                WriteBehindQueue.DURABILITY_WRITE_BEHIND);
+        queue.writeCoalesced("ns", Collections.singletonMap("a", "2"), Collections.<String>emptyList(),
+                new WriteBehindQueue.Callback() {
+                    @Override
+                    public void onPersisted() {
+                        fail("The commit must not be reported as persisted");
+                    }
+
+                    @Override
+                    public void onFailed(IOException e) {
+                        failure[0] = e;
+                    }
+                });
+        assertEquals("2", queue.lookup("ns", "a"));
+
+        backend.mFailing = true;
+        try {
+            queue.flush("ns");
+            fail("The flush must fail");
+        } catch (IOException expected) {
+        }
+        assertTrue(failure[0] != null);
+        assertEquals("1", queue.lookup("ns", "a"));
+
+        backend.mFailing = false;
+        queue.flush("ns");
+        assertEquals("1", backend.get("a"));
+        queue.shutdown();
+    }
+}
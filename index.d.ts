@@ -40,17 +40,40 @@ export interface RNSensitiveInfoOptions {
   kSecUseOperationPrompt?: string;
   kLocalizedFallbackTitle?: string;
   strings?: RNSensitiveInfoAndroidDialogStrings;
+  envelopeEncryption?: boolean;
+  // Android only. Overrides the durability configured for the namespace.
+  durability?: RNSensitiveInfoDurability;
+  // Android only; rejected with touchID. Epoch milliseconds after which the item reads as missing
+  // and is deleted in the background. Must be in the future.
+  expiresAt?: number;
+  // Android only; rejected with touchID. Like expiresAt, relative to the time of the write. Must be
+  // positive.
+  ttlMs?: number;
 }
 
+// 'commit' waits for the disk, 'apply' persists in the background and 'writeBehind' keeps the
+// value in memory until the next periodic flush.
+export type RNSensitiveInfoDurability = 'commit' | 'apply' | 'writeBehind';
+
 export declare function setItem(
   key: string,
   value: string,
   options: RNSensitiveInfoOptions,
 ): Promise<null>;
+// Android only. Writes all values with a single commit.
+export declare function setItems(
+  values: { [key: string]: string },
+  options: RNSensitiveInfoOptions,
+): Promise<null>;
 export declare function getItem(
   key: string,
   options: RNSensitiveInfoOptions,
 ): Promise<string>;
+// Android only. Missing keys resolve to null.
+export declare function getItems(
+  keys: string[],
+  options: RNSensitiveInfoOptions,
+): Promise<{ [key: string]: string | null }>;
 export declare function hasItem(
   key: string,
   options: RNSensitiveInfoOptions,
@@ -65,10 +88,57 @@ export declare function getAllItems(
   options: RNSensitiveInfoOptions,
 ): Promise<[SensitiveInfoEntry[]]>;
 
+// Android only. Pass the returned nextCursor to fetch the following page.
+interface SensitiveInfoPage {
+  items: { [key: string]: string };
+  nextCursor: string | null;
+}
+export declare function getAllItemsPage(
+  cursor: string | null,
+  limit: number,
+  options: RNSensitiveInfoOptions,
+): Promise<SensitiveInfoPage>;
+
+// Android only. Version of an item for compareAndSetItem, 0 when it does not exist. Versions
+// change with every write and are only valid while the app keeps running.
+export declare function getItemVersion(
+  key: string,
+  options: RNSensitiveInfoOptions,
+): Promise<number>;
+
+// Android only, not with touchID. Writes the item only if its version is still expectedVersion
+// (0 to create it), and returns its version after the call either way.
+export declare function compareAndSetItem(
+  key: string,
+  expectedVersion: number,
+  value: string,
+  options: RNSensitiveInfoOptions,
+): Promise<{ written: boolean; version: number }>;
+
+// Android only. Keys in ascending order, without reading or decrypting any value.
+export declare function getAllKeys(
+  options: RNSensitiveInfoOptions,
+): Promise<string[]>;
+
+// Android only. Only the matching entries are read and decrypted.
+export declare function getItemsByPrefix(
+  prefix: string,
+  options: RNSensitiveInfoOptions,
+): Promise<{ [key: string]: string }>;
+// Android only. Deletes all matching keys in one batch and resolves with their number.
+export declare function deleteItemsByPrefix(
+  prefix: string,
+  options: RNSensitiveInfoOptions,
+): Promise<number>;
+
 export declare function deleteItem(
   key: string,
   options: RNSensitiveInfoOptions,
 ): Promise<null>;
+// Android only. Removes every item of the namespace in one operation.
+export declare function clearStore(
+  options: RNSensitiveInfoOptions & { clearKeyCache?: boolean },
+): Promise<null>;
 export declare function isSensorAvailable(): Promise<
   RNSensitiveInfoBiometryType | boolean
 >;
@@ -76,3 +146,37 @@ export declare function isSensorAvailable(): Promise<
 export declare function hasEnrolledFingerprints(): Promise<boolean>;
 export declare function cancelFingerprintAuth(): void;
 export declare function setInvalidatedByBiometricEnrollment(set: boolean): void;
+
+interface SensitiveInfoKeyCacheStats {
+  hits: number;
+  misses: number;
+}
+export declare function getKeyCacheStats(): Promise<SensitiveInfoKeyCacheStats>;
+
+// Android only.
+export interface RNSensitiveInfoConfig {
+  executorThreads?: number;
+  executorQueueSize?: number;
+  decryptionParallelism?: number;
+  // Opt-in cache of decrypted values, cleared when the app goes to the background. Without a
+  // positive ttlMs, entries stay until evicted or invalidated.
+  valueCache?: { maxEntries: number; ttlMs?: number };
+  // Per sharedPreferencesName: 'sharedPreferences' (default), 'log', 'mmap' or a type
+  // registered natively. Existing values are not migrated when switching.
+  storageBackends?: { [sharedPreferencesName: string]: string };
+  // Default durability per sharedPreferencesName; 'commit' when not set.
+  durability?: { [sharedPreferencesName: string]: RNSensitiveInfoDurability };
+  writeBehindFlushIntervalMs?: number;
+  // Commit writes made within this window are persisted together, keeping only the last value
+  // of each key. Their promises resolve once the batch is on disk. 0 (default) disables it.
+  writeCoalesceWindowMs?: number;
+  // Values of at least this many bytes are Deflate-compressed before encryption. 0 (default)
+  // disables it; values stored either way stay readable.
+  compressionThresholdBytes?: number;
+  // Values of at least this many bytes are stored in an encrypted side file, with only a pointer
+  // kept in the store. 0 (default) disables it.
+  blobThresholdBytes?: number;
+}
+export declare function configure(config: RNSensitiveInfoConfig): Promise<null>;
+// Android only. Resolves once every write to the namespace is on disk.
+export declare function flush(options: RNSensitiveInfoOptions): Promise<null>;